@@ -46,6 +46,8 @@ dependencies {
 
     annotationProcessor(libs.libraries.lombok)
 
+    testImplementation(libs.libraries.junit)
+
     runtimeOnly(libs.libraries.jjwt.impl)
     runtimeOnly(libs.libraries.jjwt.jackson)
 }
@@ -17,6 +17,11 @@ public enum DataToBinaryTypeEnum {
         public byte[] bytes(final String data) {
             return data.getBytes(StandardCharsets.UTF_8);
         }
+
+        @Override
+        public String text(final byte[] data) {
+            return new String(data, StandardCharsets.UTF_8);
+        }
     },
     HEX {
         @SneakyThrows
@@ -24,15 +29,33 @@ public enum DataToBinaryTypeEnum {
         public byte[] bytes(final String data) {
             return Hex.decodeHex(data);
         }
+
+        @Override
+        public String text(final byte[] data) {
+            return Hex.encodeHexString(data);
+        }
     },
     BASE64 {
         @Override
         public byte[] bytes(final String data) {
             return Base64.getDecoder().decode(data);
         }
+
+        @Override
+        public String text(final byte[] data) {
+            return Base64.getEncoder().encodeToString(data);
+        }
     },
     ;
 
     public abstract byte[] bytes(final String data);
 
+    /**
+     * The reverse of {@link #bytes(String)}.
+     *
+     * @param data the binary data
+     * @return the data in this representation
+     */
+    public abstract String text(final byte[] data);
+
 }
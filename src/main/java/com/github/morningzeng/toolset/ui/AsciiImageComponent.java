@@ -6,8 +6,11 @@ import com.github.morningzeng.toolset.utils.GridBagUtils;
 import com.github.morningzeng.toolset.utils.GridBagUtils.GridBagFill;
 import com.github.morningzeng.toolset.utils.asciiimage.AsciiImgCache;
 import com.github.morningzeng.toolset.utils.asciiimage.AsciiToImageConverter;
-import com.github.morningzeng.toolset.utils.asciiimage.ColorSquareErrorFitStrategy;
+import com.github.morningzeng.toolset.utils.asciiimage.FastColorSquareErrorFitStrategy;
+import com.github.morningzeng.toolset.utils.asciiimage.GifDecoder;
+import com.github.morningzeng.toolset.utils.asciiimage.TileMatchCache;
 import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.PathManager;
 import com.intellij.openapi.fileChooser.FileChooserDescriptorFactory;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.ui.LabeledComponent;
@@ -16,14 +19,18 @@ import com.intellij.openapi.ui.TextFieldWithBrowseButton;
 import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.ui.JBIntSpinner;
 import com.intellij.ui.JBSplitter;
+import com.intellij.ui.components.JBCheckBox;
 import com.intellij.ui.components.JBPanel;
 import com.intellij.ui.components.JBPanelWithEmptyText;
 import com.intellij.ui.components.fields.ExtendableTextField;
+import com.intellij.util.concurrency.AppExecutorUtil;
 import com.intellij.util.ui.JBFont;
+import lombok.AllArgsConstructor;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 import net.coobird.thumbnailator.Thumbnails;
 
+import javax.swing.Timer;
 import javax.swing.event.DocumentEvent;
 import javax.swing.event.DocumentListener;
 import java.awt.BorderLayout;
@@ -31,6 +38,20 @@ import java.awt.Font;
 import java.awt.GridBagLayout;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * @author Morning Zeng
@@ -39,8 +60,38 @@ import java.io.IOException;
 @Slf4j
 public final class AsciiImageComponent extends JBPanel<JBPanelWithEmptyText> {
 
+    /**
+     * Largest size of the converted frames kept for the animation preview, in
+     * bytes. The frames of longer animations past that size are converted
+     * again on each loop.
+     */
+    private static final long PREVIEW_CACHE_BYTES = 128L << 20;
+    /**
+     * Number of frames past {@link #PREVIEW_CACHE_BYTES} converted ahead of
+     * the one shown.
+     */
+    private static final int PREVIEW_STREAMED_FRAMES = 4;
+    /**
+     * Shortest frame delay of the animation preview, in milliseconds.
+     */
+    private static final int MIN_FRAME_DELAY = 20;
+    /**
+     * Quiet period after the last edit of the image path before rendering, in
+     * milliseconds.
+     */
+    private static final int RENDER_DELAY = 300;
+
     private final Project project;
-    private final AsciiImgCache asciiImgCache = AsciiImgCache.create(JBFont.create(new Font("Courier", Font.BOLD, 6)));
+    private final AsciiImgCache asciiImgCache = AsciiImgCache.create(
+            JBFont.create(new Font("Courier", Font.BOLD, 6)), PathManager.getSystemDir().resolve("toolset").resolve("ascii-image")
+    );
+    /**
+     * Shared by every render, so the tile match caches, which are bound to the
+     * strategy instance, keep their matches across renders.
+     */
+    private final FastColorSquareErrorFitStrategy characterFitStrategy = new FastColorSquareErrorFitStrategy();
+    private final TileMatchCache exactTileMatchCache = new TileMatchCache(4096, 0);
+    private final TileMatchCache similarTileMatchCache = new TileMatchCache(4096);
     private final CollapsibleTitledSeparator paramSeparator = new CollapsibleTitledSeparator("Request Parameter");
     private final LabeledComponent<TextFieldWithBrowseButton> imageComponent = LabeledComponent.create(
             new TextFieldWithBrowseButton(new ExtendableTextField(20)), "Image path", BorderLayout.WEST
@@ -48,6 +99,10 @@ public final class AsciiImageComponent extends JBPanel<JBPanelWithEmptyText> {
     private final LabeledComponent<JBIntSpinner> qualityComponent = LabeledComponent.create(
             new JBIntSpinner(3, 1, 100), "Image quality", BorderLayout.WEST
     );
+    /**
+     * Lets tiles that differ only slightly share one match, faster but lossy.
+     */
+    private final JBCheckBox mergeSimilarTilesCheckBox = new JBCheckBox("Merge similar tiles");
 
     private final JBPanel<JBPanelWithEmptyText> parametersPanel = new JBPanel<>();
     private final JBSplitter splitter = new JBSplitter(false, "", 0.3f, 0.7f);
@@ -55,6 +110,20 @@ public final class AsciiImageComponent extends JBPanel<JBPanelWithEmptyText> {
     private final ImageLabel sourceImageLabel = new ImageLabel(500, 500);
     private final ImageLabel asciiImageLabel = new ImageLabel(500, 500);
 
+    /**
+     * Runs one render at a time, a new request waits for the cancelled one to
+     * stop.
+     */
+    private final ScheduledExecutorService renderExecutor = AppExecutorUtil.createBoundedScheduledExecutorService("Ascii Image Render", 1);
+    private final AtomicLong renderRequest = new AtomicLong();
+    private ScheduledFuture<?> pendingRender;
+    private volatile AsciiToImageConverter activeConverter;
+
+    private final Timer previewTimer = new Timer(MIN_FRAME_DELAY, e -> this.showNextPreviewFrame());
+    private volatile PreviewAnimation previewAnimation;
+    private Future<?> previewTask;
+    private AsciiToImageConverter previewConverter;
+
     public AsciiImageComponent(final Project project) {
         this.project = project;
 
@@ -71,7 +140,8 @@ public final class AsciiImageComponent extends JBPanel<JBPanelWithEmptyText> {
                     textField.getEmptyText().setText("Image path");
                     row.fill(GridBagFill.HORIZONTAL)
                             .newCell().add(this.imageComponent)
-                            .newCell().add(this.qualityComponent);
+                            .newCell().add(this.qualityComponent)
+                            .newCell().add(this.mergeSimilarTilesCheckBox);
                 })
                 .build();
 
@@ -112,32 +182,274 @@ public final class AsciiImageComponent extends JBPanel<JBPanelWithEmptyText> {
             @SneakyThrows
             void update(final DocumentEvent e) {
                 final String text = e.getDocument().getText(0, e.getDocument().getLength());
-                ApplicationManager.getApplication().executeOnPooledThread(() -> {
-                    try {
-                        renderAsciiImage(text);
-                    } catch (Exception ex) {
-                        ApplicationManager.getApplication().invokeLater(
-                                () -> Messages.showErrorDialog(ex.getMessage(), "Render Ascii Image Error")
-                        );
-                        log.error("Render Ascii Image Error", ex);
-                    }
-                });
+                scheduleRender(text);
             }
         });
+        this.mergeSimilarTilesCheckBox.addActionListener(e -> this.scheduleRender(this.imageComponent.getComponent().getText()));
+    }
+
+    @Override
+    public void removeNotify() {
+        super.removeNotify();
+        this.cancelRender();
+        this.stopPreview();
+    }
+
+    /**
+     * Renders the image once the path has not changed for {@link #RENDER_DELAY},
+     * superseding any earlier request: a pending one is dropped and a running
+     * one is cancelled between two tile rows.
+     */
+    private synchronized void scheduleRender(final String text) {
+        this.cancelRender();
+        final long request = this.renderRequest.get();
+        this.pendingRender = this.renderExecutor.schedule(() -> {
+            if (request != this.renderRequest.get()) {
+                return;
+            }
+            try {
+                this.renderAsciiImage(text, request);
+            } catch (CancellationException ignored) {
+                // superseded by a newer request
+            } catch (Exception ex) {
+                if (request == this.renderRequest.get()) {
+                    showRenderError(ex);
+                }
+            }
+        }, RENDER_DELAY, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void cancelRender() {
+        this.renderRequest.incrementAndGet();
+        if (this.pendingRender != null) {
+            this.pendingRender.cancel(false);
+            this.pendingRender = null;
+        }
+        final AsciiToImageConverter converter = this.activeConverter;
+        if (converter != null) {
+            converter.setCancelled(true);
+        }
     }
 
-    private void renderAsciiImage(final String text) throws IOException {
+    private void renderAsciiImage(final String text, final long request) throws IOException {
+        this.stopPreview();
         if (StringUtil.isEmpty(text)) {
             return;
         }
         final int quality = this.qualityComponent.getComponent().getNumber();
+        final boolean mergeSimilarTiles = this.mergeSimilarTilesCheckBox.isSelected();
+        if (StringUtil.endsWithIgnoreCase(text, ".gif")) {
+            this.startPreview(text, quality, mergeSimilarTiles, request);
+            return;
+        }
         final BufferedImage sourceImage = Thumbnails.of(text)
                 .scale(quality)
                 .asBufferedImage();
-        this.sourceImageLabel.setImage(sourceImage);
+        final AsciiToImageConverter converter = this.createConverter(mergeSimilarTiles);
+        this.activeConverter = converter;
+        try {
+            if (request != this.renderRequest.get()) {
+                return;
+            }
+            final BufferedImage asciiImage = converter.convertImage(sourceImage);
+            synchronized (this) {
+                if (request == this.renderRequest.get()) {
+                    this.sourceImageLabel.setImage(sourceImage);
+                    this.asciiImageLabel.setImage(asciiImage);
+                }
+            }
+        } finally {
+            this.activeConverter = null;
+        }
+    }
+
+    private AsciiToImageConverter createConverter(final boolean mergeSimilarTiles) {
+        final AsciiToImageConverter converter = new AsciiToImageConverter(this.asciiImgCache, this.characterFitStrategy);
+        converter.setParallel(true);
+        converter.setTileMatchCache(mergeSimilarTiles ? this.similarTileMatchCache : this.exactTileMatchCache);
+        return converter;
+    }
+
+    /**
+     * Plays an animation without encoding it again: frames are converted on a
+     * background thread, shown at their own delay as soon as they are ready,
+     * then played again in a loop, from the converted frames as far as they
+     * fit in {@link #PREVIEW_CACHE_BYTES}.
+     */
+    private synchronized void startPreview(final String path, final int quality, final boolean mergeSimilarTiles, final long request) {
+        if (request != this.renderRequest.get()) {
+            return;
+        }
+        final PreviewAnimation animation = new PreviewAnimation();
+        final AsciiToImageConverter converter = this.createConverter(mergeSimilarTiles);
+        this.previewAnimation = animation;
+        this.previewConverter = converter;
+        this.previewTask = ApplicationManager.getApplication().executeOnPooledThread(() -> {
+            try {
+                this.convertFrames(path, quality, converter, animation);
+            } catch (CancellationException | InterruptedException ignored) {
+                // stopped while converting or handing over a frame
+            } catch (Exception ex) {
+                // stopping interrupts the thread, failing any read in progress
+                if (!Thread.currentThread().isInterrupted() && this.previewAnimation == animation) {
+                    showRenderError(ex);
+                }
+            } finally {
+                animation.complete = true;
+            }
+        });
+        ApplicationManager.getApplication().invokeLater(this.previewTimer::restart);
+    }
+
+    private synchronized void stopPreview() {
+        this.previewAnimation = null;
+        if (this.previewTask != null) {
+            this.previewTask.cancel(true);
+            this.previewTask = null;
+        }
+        if (this.previewConverter != null) {
+            this.previewConverter.setCancelled(true);
+            this.previewConverter = null;
+        }
+        ApplicationManager.getApplication().invokeLater(this.previewTimer::stop);
+    }
+
+    /**
+     * Converts each frame of an animation once, keeping them for the loop,
+     * until the last one or the {@link #PREVIEW_CACHE_BYTES} limit. Past the
+     * limit, the following frames are handed over one by one, and decoded and
+     * converted again on each loop, until the converter is cancelled.
+     */
+    private void convertFrames(final String path, final int quality, final AsciiToImageConverter converter,
+                               final PreviewAnimation animation) throws IOException, InterruptedException {
+        long bytes = 0;
+        do {
+            final GifDecoder decoder = new GifDecoder();
+            if (decoder.open(Files.newInputStream(Path.of(path))) != GifDecoder.STATUS_OK) {
+                throw new IOException("Unable to read GIF: " + path);
+            }
+            try {
+                // kept frames are not converted again, but still decoded: later frames are drawn over them
+                int index = 0;
+                for (final Iterator<GifDecoder.GifFrame> iterator = decoder.frames(); iterator.hasNext(); index++) {
+                    final GifDecoder.GifFrame frame = iterator.next();
+                    if (animation.streaming && index < animation.frames.size()) {
+                        continue;
+                    }
+                    final BufferedImage sourceImage = Thumbnails.of(frame.image)
+                            .scale(quality)
+                            .asBufferedImage();
+                    final BufferedImage asciiImage = converter.convertImage(sourceImage);
+                    final PreviewFrame previewFrame = new PreviewFrame(sourceImage, asciiImage, frame.delay);
+                    if (!animation.streaming && bytes < PREVIEW_CACHE_BYTES) {
+                        animation.frames.add(previewFrame);
+                        bytes += imageBytes(sourceImage) + imageBytes(asciiImage);
+                    } else {
+                        animation.streaming = true;
+                        animation.streamedFrames.put(previewFrame);
+                    }
+                }
+            } finally {
+                decoder.close();
+            }
+            if (animation.streaming) {
+                animation.streamedFrames.put(PreviewAnimation.LOOP);
+            }
+        } while (animation.streaming);
+        if (animation.frames.isEmpty()) {
+            throw new IOException("No frame in GIF: " + path);
+        }
+    }
+
+    private static long imageBytes(final BufferedImage image) {
+        return (long) image.getWidth() * image.getHeight() * Integer.BYTES;
+    }
+
+    private void showNextPreviewFrame() {
+        final PreviewAnimation animation = this.previewAnimation;
+        final PreviewFrame frame = animation == null ? null : animation.next();
+        if (frame == null) {
+            // not converted yet, check again shortly
+            this.previewTimer.setDelay(MIN_FRAME_DELAY);
+            return;
+        }
+        this.sourceImageLabel.setImage(frame.sourceImage);
+        this.asciiImageLabel.setImage(frame.asciiImage);
+        this.previewTimer.setDelay(Math.max(frame.delay, MIN_FRAME_DELAY));
+    }
+
+    private static void showRenderError(final Exception ex) {
+        ApplicationManager.getApplication().invokeLater(
+                () -> Messages.showErrorDialog(ex.getMessage(), "Render Ascii Image Error")
+        );
+        log.error("Render Ascii Image Error", ex);
+    }
+
+    /**
+     * Frames of the animation preview, appended once as they are converted and
+     * then played in a loop, followed by the streamed frames when they do not
+     * all fit in {@link #PREVIEW_CACHE_BYTES}.
+     */
+    private static final class PreviewAnimation {
+        /**
+         * Marks the end of the streamed frames of one loop.
+         */
+        private static final PreviewFrame LOOP = new PreviewFrame(null, null, 0);
+
+        private final List<PreviewFrame> frames = Collections.synchronizedList(new ArrayList<>());
+        /**
+         * Frames following the kept ones, each shown once.
+         */
+        private final BlockingQueue<PreviewFrame> streamedFrames = new ArrayBlockingQueue<>(PREVIEW_STREAMED_FRAMES);
+        /**
+         * Whether no more frame will be appended.
+         */
+        private volatile boolean complete;
+        /**
+         * Whether the frames did not all fit, so no more frame will be
+         * appended and the following ones are streamed.
+         */
+        private volatile boolean streaming;
+        /**
+         * Index of the next frame to show, only used on the EDT.
+         */
+        private int next;
+
+        /**
+         * Gets the next frame to show, going back to the first one after the
+         * last.
+         *
+         * @return the frame, or null when it is not converted yet
+         */
+        private PreviewFrame next() {
+            // read before the size: every frame is appended before either is set
+            final boolean complete = this.complete;
+            final boolean streaming = this.streaming;
+            final int size = this.frames.size();
+            if (this.next < size) {
+                return this.frames.get(this.next++);
+            }
+            if (streaming) {
+                final PreviewFrame frame = this.streamedFrames.poll();
+                if (frame != LOOP) {
+                    return frame;
+                }
+                this.next = 0;
+                return size == 0 ? null : this.frames.get(this.next++);
+            }
+            if (!complete || size == 0) {
+                return null;
+            }
+            this.next = 0;
+            return this.frames.get(this.next++);
+        }
+    }
 
-        final AsciiToImageConverter converter = new AsciiToImageConverter(this.asciiImgCache, new ColorSquareErrorFitStrategy());
-        this.asciiImageLabel.setImage(converter.convertImage(sourceImage));
+    @AllArgsConstructor
+    private static final class PreviewFrame {
+        private final BufferedImage sourceImage;
+        private final BufferedImage asciiImage;
+        private final int delay;
     }
 
 }
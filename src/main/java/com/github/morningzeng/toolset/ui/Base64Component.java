@@ -2,10 +2,10 @@ package com.github.morningzeng.toolset.ui;
 
 import com.github.morningzeng.toolset.Constants.IconC;
 import com.github.morningzeng.toolset.component.LanguageTextArea;
+import com.github.morningzeng.toolset.utils.BackgroundTaskUtils;
 import com.github.morningzeng.toolset.utils.GridLayoutUtils;
 import com.intellij.openapi.fileTypes.PlainTextLanguage;
 import com.intellij.openapi.project.Project;
-import com.intellij.openapi.ui.Messages;
 import com.intellij.ui.components.JBPanel;
 import com.intellij.ui.components.JBPanelWithEmptyText;
 import com.intellij.util.ui.GridBag;
@@ -22,12 +22,14 @@ import static java.nio.charset.StandardCharsets.UTF_8;
  * @since 2024-05-21
  */
 public final class Base64Component extends JBPanel<JBPanelWithEmptyText> {
+    private final Project project;
     private final LanguageTextArea encodeArea;
     private final LanguageTextArea decodeArea;
     private final JButton encodeBtn = new JButton("Encode", IconC.DOUBLE_ANGLES_DOWN);
     private final JButton decodeBtn = new JButton("Decode", IconC.DOUBLE_ANGLES_UP);
 
     public Base64Component(final Project project) {
+        this.project = project;
         this.encodeArea = new LanguageTextArea(PlainTextLanguage.INSTANCE, project, "");
         this.decodeArea = new LanguageTextArea(PlainTextLanguage.INSTANCE, project, "");
         this.encodeArea.setPlaceholder("Base64 encoded text");
@@ -48,20 +50,14 @@ public final class Base64Component extends JBPanel<JBPanelWithEmptyText> {
 
     void initEvent() {
         this.encodeBtn.addActionListener(e -> {
-            try {
-                final String enc = Base64.getEncoder().encodeToString(this.decodeArea.getText().getBytes(UTF_8));
-                this.encodeArea.setText(enc);
-            } catch (Exception ex) {
-                Messages.showMessageDialog(this, ex.getMessage(), "Encoding Error", Messages.getErrorIcon());
-            }
+            final String text = this.decodeArea.getText();
+            BackgroundTaskUtils.run(this.project, "Encoding", text.length(),
+                    indicator -> Base64.getEncoder().encodeToString(text.getBytes(UTF_8)), this.encodeArea::setText);
         });
         this.decodeBtn.addActionListener(e -> {
-            try {
-                final String dec = new String(Base64.getDecoder().decode(this.encodeArea.getText()), UTF_8);
-                this.decodeArea.setText(dec);
-            } catch (Exception ex) {
-                Messages.showMessageDialog(this, ex.getMessage(), "Decoding Error", Messages.getErrorIcon());
-            }
+            final String text = this.encodeArea.getText();
+            BackgroundTaskUtils.run(this.project, "Decoding", text.length(),
+                    indicator -> new String(Base64.getDecoder().decode(text), UTF_8), this.decodeArea::setText);
         });
     }
 
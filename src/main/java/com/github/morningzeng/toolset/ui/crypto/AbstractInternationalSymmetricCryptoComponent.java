@@ -1,13 +1,19 @@
 package com.github.morningzeng.toolset.ui.crypto;
 
+import com.github.morningzeng.toolset.enums.DataToBinaryTypeEnum;
 import com.github.morningzeng.toolset.model.SymmetricCryptoProp;
+import com.github.morningzeng.toolset.utils.GridBagUtils;
+import com.github.morningzeng.toolset.utils.GridBagUtils.GridBagFill;
 import com.github.morningzeng.toolset.utils.GridBagUtils.Row;
 import com.github.morningzeng.toolset.utils.SymmetricCrypto;
+import com.github.morningzeng.toolset.utils.SymmetricCrypto.SymmetricCryptoSupport;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.ui.ComboBox;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.Arrays;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
 
 /**
  * @author Morning Zeng
@@ -33,6 +39,10 @@ public sealed abstract class AbstractInternationalSymmetricCryptoComponent exten
      * @since <version>
      */
     private final ComboBox<SymmetricCrypto> cryptoComboBox = new ComboBox<>(this.cryptos);
+    /**
+     * The encoding of the ciphertext in the encrypted text area.
+     */
+    private final ComboBox<DataToBinaryTypeEnum> encodingComboBox = new ComboBox<>(new DataToBinaryTypeEnum[]{DataToBinaryTypeEnum.BASE64, DataToBinaryTypeEnum.HEX});
 
     public AbstractInternationalSymmetricCryptoComponent(final Project project) {
         super(project);
@@ -46,16 +56,51 @@ public sealed abstract class AbstractInternationalSymmetricCryptoComponent exten
 
     @Override
     void cryptoRow(final Row<AbstractSymmetricCryptoComponent> row) {
-        row.newCell().add(this.cryptoComboBox);
+        row.newCell().add(
+                GridBagUtils.builder()
+                        .newRow(_row -> _row.fill(GridBagFill.HORIZONTAL)
+                                .newCell().add(this.cryptoComboBox)
+                                .newCell().add(this.encodingComboBox))
+                        .build()
+        );
+    }
+
+    /**
+     * Ciphers are kept per thread by {@link SymmetricCrypto}, so workers share one support.
+     */
+    @Override
+    Supplier<UnaryOperator<String>> encOperation(final SymmetricCryptoProp cryptoProp) {
+        final SymmetricCryptoSupport support = this.cryptoComboBox.getItem().crypto(cryptoProp.getKey(), cryptoProp.keyType(), cryptoProp.getIv(), cryptoProp.ivType());
+        final DataToBinaryTypeEnum encoding = this.encodingComboBox.getItem();
+        return () -> data -> support.enc(data, encoding);
     }
 
     @Override
-    String enc(final SymmetricCryptoProp cryptoProp) {
-        return this.cryptoComboBox.getItem().crypto(cryptoProp.getKey(), cryptoProp.keyType(), cryptoProp.getIv(), cryptoProp.ivType()).enc(this.decryptArea.getText());
+    Supplier<UnaryOperator<String>> decOperation(final SymmetricCryptoProp cryptoProp) {
+        final SymmetricCryptoSupport support = this.cryptoComboBox.getItem().crypto(cryptoProp.getKey(), cryptoProp.keyType(), cryptoProp.getIv(), cryptoProp.ivType());
+        final DataToBinaryTypeEnum encoding = this.encodingComboBox.getItem();
+        return () -> data -> support.dec(data, encoding);
     }
 
     @Override
-    String dec(final SymmetricCryptoProp cryptoProp) {
-        return this.cryptoComboBox.getItem().crypto(cryptoProp.getKey(), cryptoProp.keyType(), cryptoProp.getIv(), cryptoProp.ivType()).dec(this.encryptArea.getText());
+    FileCrypto encFile(final SymmetricCryptoProp cryptoProp) {
+        return this.fileCrypto(cryptoProp)::enc;
+    }
+
+    @Override
+    FileCrypto decFile(final SymmetricCryptoProp cryptoProp) {
+        return this.fileCrypto(cryptoProp)::dec;
+    }
+
+    /**
+     * Files are streamed, which authenticated modes cannot do without holding the whole file, so they are refused
+     * before a file is chosen.
+     */
+    private SymmetricCryptoSupport fileCrypto(final SymmetricCryptoProp cryptoProp) {
+        final SymmetricCrypto crypto = this.cryptoComboBox.getItem();
+        if (crypto.isAead()) {
+            throw new UnsupportedOperationException("File encryption is not supported in " + crypto.getAlgorithm());
+        }
+        return crypto.crypto(cryptoProp.getKey(), cryptoProp.keyType(), cryptoProp.getIv(), cryptoProp.ivType());
     }
 }
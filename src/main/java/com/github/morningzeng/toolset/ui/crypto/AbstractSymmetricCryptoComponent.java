@@ -4,19 +4,42 @@ import com.fasterxml.jackson.core.type.TypeReference;
 import com.github.morningzeng.toolset.Constants.IconC;
 import com.github.morningzeng.toolset.dialog.SymmetricPropDialog;
 import com.github.morningzeng.toolset.model.SymmetricCryptoProp;
+import com.github.morningzeng.toolset.component.LanguageTextArea;
+import com.github.morningzeng.toolset.utils.BackgroundTaskUtils;
+import com.github.morningzeng.toolset.utils.BatchCrypto;
 import com.github.morningzeng.toolset.utils.GridBagUtils;
 import com.github.morningzeng.toolset.utils.GridBagUtils.GridBagFill;
 import com.github.morningzeng.toolset.utils.ScratchFileUtils;
 import com.github.morningzeng.toolset.utils.StringUtils;
+import com.intellij.icons.AllIcons;
+import com.intellij.notification.Notification;
+import com.intellij.notification.NotificationType;
+import com.intellij.openapi.fileChooser.FileChooser;
+import com.intellij.openapi.fileChooser.FileChooserDescriptorFactory;
+import com.intellij.openapi.fileChooser.FileChooserFactory;
+import com.intellij.openapi.fileChooser.FileSaverDescriptor;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.ui.Messages;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.VirtualFileWrapper;
+import com.intellij.ui.components.JBCheckBox;
 import com.intellij.ui.components.JBPanel;
 import com.intellij.ui.components.JBPanelWithEmptyText;
 
 import javax.swing.JButton;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Objects;
+import java.util.StringJoiner;
+import java.util.function.LongConsumer;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
 
 /**
  * @author Morning Zeng
@@ -24,8 +47,18 @@ import java.util.Objects;
  */
 public sealed abstract class AbstractSymmetricCryptoComponent extends AbstractCryptoComponent<SymmetricCryptoProp> permits AbstractInternationalSymmetricCryptoComponent, SM4Component {
 
+    private static final String ENCRYPTED_FILE_SUFFIX = ".enc";
+    private static final String DECRYPTED_FILE_SUFFIX = ".dec";
+    /**
+     * Maximum number of failed lines listed after a line by line encryption or decryption.
+     */
+    private static final int MAX_REPORTED_FAILURES = 10;
+
     private final JButton encryptBtn = new JButton("Encrypt", IconC.DOUBLE_ANGLES_DOWN);
     private final JButton decryptBtn = new JButton("Decrypt", IconC.DOUBLE_ANGLES_UP);
+    private final JButton encryptFileBtn = new JButton("Encrypt File", AllIcons.Actions.MenuOpen);
+    private final JButton decryptFileBtn = new JButton("Decrypt File", AllIcons.Actions.MenuOpen);
+    private final JBCheckBox lineByLineCheckBox = new JBCheckBox("Line by line");
 
     public AbstractSymmetricCryptoComponent(final Project project) {
         super(project);
@@ -79,7 +112,10 @@ public sealed abstract class AbstractSymmetricCryptoComponent extends AbstractCr
                     final JBPanel<JBPanelWithEmptyText> btnPanel = GridBagUtils.builder()
                             .newRow(_row -> _row.fill(GridBagFill.HORIZONTAL)
                                     .newCell().add(this.encryptBtn)
-                                    .newCell().add(this.decryptBtn))
+                                    .newCell().add(this.decryptBtn)
+                                    .newCell().add(this.lineByLineCheckBox)
+                                    .newCell().add(this.encryptFileBtn)
+                                    .newCell().add(this.decryptFileBtn))
                             .build();
                     row.fill(GridBagFill.HORIZONTAL)
                             .newCell().weightY(0).gridWidth(3).add(btnPanel);
@@ -101,43 +137,229 @@ public sealed abstract class AbstractSymmetricCryptoComponent extends AbstractCr
      * The decrypted text is then set in the decryption area.
      * <p>
      * If any exception occurs during encryption or decryption, an error message dialog is displayed.
+     * <p>
+     * Large texts are processed off the EDT, see {@link #cryptoText(LanguageTextArea, LanguageTextArea, boolean)}.
+     * When line by line is selected, each line is encrypted or decrypted on its own, see
+     * {@link #showLines(List, LanguageTextArea, String)}.
+     * <p>
+     * The file buttons encrypt or decrypt a chosen file into another one, see {@link #cryptoFile(boolean)}.
      */
     void initAction() {
-        this.encryptBtn.addActionListener(e -> {
-            try {
-                final SymmetricCryptoProp cryptoProp = this.cryptoPropComboBox.getItem();
-                if (cryptoProp.isDirectory() || Objects.isNull(cryptoProp.getKey()) || Objects.isNull(cryptoProp.getIv())) {
-                    Messages.showErrorDialog(project, "Please select a crypto key", "Error");
-                    return;
-                }
-                this.encryptArea.setText(this.enc(cryptoProp));
-            } catch (Exception ex) {
-                Messages.showMessageDialog(this.project, ex.getMessage(), "Encrypt Error", Messages.getErrorIcon());
-            }
-        });
+        this.encryptBtn.addActionListener(e -> this.cryptoText(this.decryptArea, this.encryptArea, true));
         // 不使用自动格式化
         this.decryptArea.autoReformat(false);
-        this.decryptBtn.addActionListener(e -> {
-            try {
-                final SymmetricCryptoProp cryptoProp = this.cryptoPropComboBox.getItem();
-                if (cryptoProp.isDirectory() || Objects.isNull(cryptoProp.getKey()) || Objects.isNull(cryptoProp.getIv())) {
-                    Messages.showErrorDialog(project, "Please select a crypto key", "Error");
-                    return;
-                }
-                this.decryptArea.setText(this.dec(cryptoProp));
-            } catch (Exception ex) {
-                Messages.showMessageDialog(this.project, ex.getMessage(), "Decrypt Error", Messages.getErrorIcon());
-            }
-        });
+        this.decryptBtn.addActionListener(e -> this.cryptoText(this.encryptArea, this.decryptArea, false));
+        this.encryptFileBtn.addActionListener(e -> this.cryptoFile(true));
+        this.decryptFileBtn.addActionListener(e -> this.cryptoFile(false));
         this.cryptoManageBtn.addActionListener(e -> {
             final SymmetricPropDialog dialog = new SymmetricPropDialog(this.project, this::reloadCryptoProps);
             dialog.showAndGet();
         });
     }
 
+    /**
+     * Encrypts or decrypts the text of an area into another one.
+     * <p>
+     * The settings and the text are read on the EDT, the work runs through {@link BackgroundTaskUtils}: in the
+     * background with a cancel button for large texts, inline otherwise.
+     *
+     * @param source  the area holding the input
+     * @param target  the area receiving the result
+     * @param encrypt whether the text is encrypted, otherwise decrypted
+     */
+    private void cryptoText(final LanguageTextArea source, final LanguageTextArea target, final boolean encrypt) {
+        final String action = encrypt ? "Encrypt" : "Decrypt";
+        final SymmetricCryptoProp cryptoProp = this.cryptoPropComboBox.getItem();
+        if (Objects.isNull(cryptoProp) || cryptoProp.isDirectory() || Objects.isNull(cryptoProp.getKey()) || Objects.isNull(cryptoProp.getIv())) {
+            Messages.showErrorDialog(project, "Please select a crypto key", "Error");
+            return;
+        }
+        final Supplier<UnaryOperator<String>> operationFactory;
+        try {
+            operationFactory = encrypt ? this.encOperation(cryptoProp) : this.decOperation(cryptoProp);
+        } catch (Exception ex) {
+            Messages.showMessageDialog(this.project, ex.getMessage(), action + " Error", Messages.getErrorIcon());
+            return;
+        }
+        final String text = source.getText();
+        if (this.lineByLineCheckBox.isSelected()) {
+            BackgroundTaskUtils.run(this.project, action, text.length(),
+                    indicator -> BatchCrypto.lines(text, operationFactory, indicator),
+                    results -> this.showLines(results, target, action));
+            return;
+        }
+        BackgroundTaskUtils.run(this.project, action, text.length(),
+                indicator -> operationFactory.get().apply(text), target::setText);
+    }
+
+    /**
+     * Shows the lines encrypted or decrypted on their own.
+     * <p>
+     * A failed line does not stop the others: it is left empty in the result, so lines stay aligned with the
+     * input, and the failures are listed in a warning.
+     *
+     * @param results the result of each line
+     * @param target  receives the result
+     * @param action  the action name used in the warning
+     */
+    private void showLines(final List<BatchCrypto.Result> results, final LanguageTextArea target, final String action) {
+        final StringJoiner output = new StringJoiner("\n");
+        final StringJoiner failures = new StringJoiner("\n");
+        int failed = 0;
+        for (int i = 0; i < results.size(); i++) {
+            final BatchCrypto.Result result = results.get(i);
+            if (!result.isFailed()) {
+                output.add(result.getOutput());
+                continue;
+            }
+            output.add("");
+            if (++failed <= MAX_REPORTED_FAILURES) {
+                final Exception error = result.getError();
+                failures.add("Line %d: %s".formatted(i + 1, Objects.toString(error.getMessage(), error.getClass().getSimpleName())));
+            }
+        }
+        target.setText(output.toString());
+        if (failed > 0) {
+            final String message = "%d of %d lines failed\n%s".formatted(failed, results.size(), failures);
+            Messages.showMessageDialog(this.project, message, action + " Warning", Messages.getWarningIcon());
+        }
+    }
+
+    /**
+     * Encrypts or decrypts a file chosen by the user into a target file, always in a cancellable background task.
+     * <p>
+     * The file is processed in fixed-size chunks, so memory use does not depend on its size. The target
+     * file is deleted when the task fails or is cancelled.
+     *
+     * @param encrypt whether the file is encrypted, otherwise decrypted
+     */
+    private void cryptoFile(final boolean encrypt) {
+        final String action = encrypt ? "Encrypt" : "Decrypt";
+        final SymmetricCryptoProp cryptoProp = this.cryptoPropComboBox.getItem();
+        if (Objects.isNull(cryptoProp) || cryptoProp.isDirectory() || Objects.isNull(cryptoProp.getKey()) || Objects.isNull(cryptoProp.getIv())) {
+            Messages.showErrorDialog(project, "Please select a crypto key", "Error");
+            return;
+        }
+        final FileCrypto fileCrypto;
+        try {
+            fileCrypto = encrypt ? this.encFile(cryptoProp) : this.decFile(cryptoProp);
+        } catch (Exception ex) {
+            Messages.showMessageDialog(this.project, ex.getMessage(), action + " Error", Messages.getErrorIcon());
+            return;
+        }
+
+        final VirtualFile source = FileChooser.chooseFile(FileChooserDescriptorFactory.createSingleFileDescriptor(), this.project, null);
+        if (Objects.isNull(source)) {
+            return;
+        }
+        final String targetName = encrypt || !StringUtil.endsWith(source.getName(), ENCRYPTED_FILE_SUFFIX)
+                ? source.getName() + (encrypt ? ENCRYPTED_FILE_SUFFIX : DECRYPTED_FILE_SUFFIX)
+                : StringUtil.trimEnd(source.getName(), ENCRYPTED_FILE_SUFFIX);
+        final VirtualFileWrapper target = FileChooserFactory.getInstance()
+                .createSaveFileDialog(new FileSaverDescriptor(action + " File", "Save the %sed file as".formatted(action.toLowerCase())), this.project)
+                .save(source.getParent(), targetName);
+        if (Objects.isNull(target)) {
+            return;
+        }
+        final Path sourcePath = source.toNioPath();
+        final Path targetPath = target.getFile().toPath();
+        if (sourcePath.toAbsolutePath().normalize().equals(targetPath.toAbsolutePath().normalize())) {
+            Messages.showErrorDialog(project, "The target file must differ from the source file", action + " Error");
+            return;
+        }
+
+        final long size = source.getLength();
+        BackgroundTaskUtils.runInBackground(this.project, action, indicator -> {
+            indicator.setText("%sing %s".formatted(action, source.getName()));
+            indicator.setIndeterminate(false);
+            try {
+                fileCrypto.crypto(sourcePath, targetPath, read -> {
+                    indicator.checkCanceled();
+                    indicator.setFraction(size == 0 ? 1 : (double) read / size);
+                });
+            } catch (Exception ex) {
+                try {
+                    Files.deleteIfExists(targetPath);
+                } catch (IOException deleteEx) {
+                    ex.addSuppressed(deleteEx);
+                }
+                throw ex;
+            }
+            return targetPath;
+        }, path -> new Notification("virtual-file-notify", "%sed file".formatted(action), path.toString(), NotificationType.INFORMATION)
+                .notify(this.project));
+    }
+
+    /**
+     * Wraps a stream to report the number of bytes read so far.
+     *
+     * @param in       the stream
+     * @param progress receives the number of bytes read after each read
+     * @return the wrapping stream
+     */
+    static InputStream progressStream(final InputStream in, final LongConsumer progress) {
+        return new FilterInputStream(in) {
+            private long count;
+
+            @Override
+            public int read() throws IOException {
+                final int b = super.read();
+                if (b >= 0) {
+                    progress.accept(++this.count);
+                }
+                return b;
+            }
+
+            @Override
+            public int read(final byte[] b, final int off, final int len) throws IOException {
+                final int read = super.read(b, off, len);
+                if (read > 0) {
+                    progress.accept(this.count += read);
+                }
+                return read;
+            }
+        };
+    }
+
     abstract void cryptoRow(final GridBagUtils.Row<AbstractSymmetricCryptoComponent> row);
 
-    abstract String enc(final SymmetricCryptoProp cryptoProp);
+    /**
+     * Prepares the encryption of single lines with the selected settings, called on the EDT.
+     *
+     * @param cryptoProp the selected key
+     * @return creates the encryption used by one worker thread
+     */
+    abstract Supplier<UnaryOperator<String>> encOperation(final SymmetricCryptoProp cryptoProp);
+
+    /**
+     * Prepares the decryption of single lines with the selected settings, called on the EDT.
+     *
+     * @param cryptoProp the selected key
+     * @return creates the decryption used by one worker thread
+     */
+    abstract Supplier<UnaryOperator<String>> decOperation(final SymmetricCryptoProp cryptoProp);
+
+    /**
+     * Prepares the encryption of a file with the selected settings, called on the EDT.
+     *
+     * @param cryptoProp the selected key
+     * @return the file encryption, run on a background thread
+     */
+    abstract FileCrypto encFile(final SymmetricCryptoProp cryptoProp);
 
-    abstract String dec(final SymmetricCryptoProp cryptoProp);
+    /**
+     * Prepares the decryption of a file with the selected settings, called on the EDT.
+     *
+     * @param cryptoProp the selected key
+     * @return the file decryption, run on a background thread
+     */
+    abstract FileCrypto decFile(final SymmetricCryptoProp cryptoProp);
+
+    /**
+     * Encrypts or decrypts a source file into a target file.
+     */
+    @FunctionalInterface
+    interface FileCrypto {
+        void crypto(Path source, Path target, LongConsumer progress) throws IOException;
+    }
 }
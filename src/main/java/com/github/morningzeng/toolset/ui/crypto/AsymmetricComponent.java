@@ -5,6 +5,8 @@ import com.github.morningzeng.toolset.Constants.IconC;
 import com.github.morningzeng.toolset.dialog.AsymmetricPropDialog;
 import com.github.morningzeng.toolset.model.AsymmetricCryptoProp;
 import com.github.morningzeng.toolset.utils.AsymmetricCrypto;
+import com.github.morningzeng.toolset.utils.AsymmetricCrypto.AsymmetricCryptoSupport;
+import com.github.morningzeng.toolset.utils.BackgroundTaskUtils;
 import com.github.morningzeng.toolset.utils.GridBagUtils;
 import com.github.morningzeng.toolset.utils.GridBagUtils.GridBagFill;
 import com.github.morningzeng.toolset.utils.ScratchFileUtils;
@@ -96,66 +98,63 @@ public final class AsymmetricComponent extends AbstractCryptoComponent<Asymmetri
     @Override
     void initAction() {
         this.encryptBtn.addActionListener(e -> {
-            try {
-                final AsymmetricCryptoProp prop = this.cryptoPropComboBox.getItem();
-                if (prop.isDirectory() || Objects.isNull(prop.getKey())) {
-                    Messages.showErrorDialog(project, "Please select a crypto key", "Error");
-                    return;
-                }
-                final AsymmetricCrypto crypto = this.cryptoComboBox.getItem();
-                final String enc = prop.crypto(project, crypto).enc(this.decryptArea.getText());
-                this.encryptArea.setText(enc);
-            } catch (Exception ex) {
-                Messages.showMessageDialog(this.project, ex.getMessage(), "Encrypt Error", Messages.getErrorIcon());
+            final AsymmetricCryptoProp prop = this.cryptoPropComboBox.getItem();
+            if (Objects.isNull(prop) || prop.isDirectory() || Objects.isNull(prop.getKey())) {
+                Messages.showErrorDialog(project, "Please select a crypto key", "Error");
+                return;
             }
+            final AsymmetricCryptoSupport support = prop.crypto(project, this.cryptoComboBox.getItem());
+            if (Objects.isNull(support)) {
+                return;
+            }
+            final String text = this.decryptArea.getText();
+            BackgroundTaskUtils.run(this.project, "Encrypt", text.length(),
+                    indicator -> support.enc(text), this.encryptArea::setText);
         });
         // 不使用自动格式化
         this.decryptArea.autoReformat(false);
         this.decryptBtn.addActionListener(e -> {
-            try {
-                final AsymmetricCryptoProp prop = this.cryptoPropComboBox.getItem();
-                if (prop.isDirectory() || Objects.isNull(prop.getKey())) {
-                    Messages.showErrorDialog(project, "Please select a crypto key", "Error");
-                    return;
-                }
-                final AsymmetricCrypto crypto = this.cryptoComboBox.getItem();
-                final String dec = prop.crypto(project, crypto).dec(this.encryptArea.getText());
-                this.decryptArea.setText(dec);
-            } catch (Exception ex) {
-                Messages.showMessageDialog(this.project, ex.getMessage(), "Encrypt Error", Messages.getErrorIcon());
+            final AsymmetricCryptoProp prop = this.cryptoPropComboBox.getItem();
+            if (Objects.isNull(prop) || prop.isDirectory() || Objects.isNull(prop.getKey())) {
+                Messages.showErrorDialog(project, "Please select a crypto key", "Error");
+                return;
+            }
+            final AsymmetricCryptoSupport support = prop.crypto(project, this.cryptoComboBox.getItem());
+            if (Objects.isNull(support)) {
+                return;
             }
+            final String text = this.encryptArea.getText();
+            BackgroundTaskUtils.run(this.project, "Decrypt", text.length(),
+                    indicator -> support.dec(text), this.decryptArea::setText);
         });
         this.signBtn.addActionListener(e -> {
-            try {
-                final AsymmetricCryptoProp prop = this.cryptoPropComboBox.getItem();
-                if (prop.isDirectory() || Objects.isNull(prop.getKey()) || prop.getIsPublicKey()) {
-                    Messages.showErrorDialog(project, "Please select a private key", "Error");
-                    return;
-                }
-                final AsymmetricCrypto crypto = this.cryptoComboBox.getItem();
-                final String sign = crypto.privateKey(prop.getKey()).sign(this.decryptArea.getText());
-                this.encryptArea.setText(sign);
-            } catch (Exception ex) {
-                Messages.showMessageDialog(this.project, ex.getMessage(), "Encrypt Error", Messages.getErrorIcon());
+            final AsymmetricCryptoProp prop = this.cryptoPropComboBox.getItem();
+            if (Objects.isNull(prop) || prop.isDirectory() || Objects.isNull(prop.getKey()) || !Boolean.FALSE.equals(prop.getIsPublicKey())) {
+                Messages.showErrorDialog(project, "Please select a private key", "Error");
+                return;
             }
+            final AsymmetricCryptoSupport support = this.cryptoComboBox.getItem().privateKey(prop.getKey());
+            final String text = this.decryptArea.getText();
+            BackgroundTaskUtils.run(this.project, "Sign", text.length(),
+                    indicator -> support.sign(text), this.encryptArea::setText);
         });
         this.verifyBtn.addActionListener(e -> {
-            try {
-                final AsymmetricCryptoProp prop = this.cryptoPropComboBox.getItem();
-                if (prop.isDirectory() || Objects.isNull(prop.getKey()) || !prop.getIsPublicKey()) {
-                    Messages.showErrorDialog(project, "Please select a public key", "Error");
-                    return;
-                }
-                final AsymmetricCrypto crypto = this.cryptoComboBox.getItem();
-                final boolean verify = crypto.publicKey(prop.getKey()).verify(this.decryptArea.getText(), this.encryptArea.getText());
-                if (verify) {
-                    Messages.showInfoMessage("Signature verification passed", "Signature Verification");
-                } else {
-                    Messages.showWarningDialog("Signature verification failed", "Signature Verification");
-                }
-            } catch (Exception ex) {
-                Messages.showMessageDialog(this.project, ex.getMessage(), "Encrypt Error", Messages.getErrorIcon());
+            final AsymmetricCryptoProp prop = this.cryptoPropComboBox.getItem();
+            if (Objects.isNull(prop) || prop.isDirectory() || Objects.isNull(prop.getKey()) || !Boolean.TRUE.equals(prop.getIsPublicKey())) {
+                Messages.showErrorDialog(project, "Please select a public key", "Error");
+                return;
             }
+            final AsymmetricCryptoSupport support = this.cryptoComboBox.getItem().publicKey(prop.getKey());
+            final String text = this.decryptArea.getText();
+            final String sign = this.encryptArea.getText();
+            BackgroundTaskUtils.run(this.project, "Signature Verification", text.length(),
+                    indicator -> support.verify(text, sign), verify -> {
+                        if (verify) {
+                            Messages.showInfoMessage("Signature verification passed", "Signature Verification");
+                        } else {
+                            Messages.showWarningDialog("Signature verification failed", "Signature Verification");
+                        }
+                    });
         });
         this.cryptoComboBox.addItemListener(e -> super.reloadCryptoProps(this.getCryptoProps()));
         this.cryptoManageBtn.addActionListener(e -> {
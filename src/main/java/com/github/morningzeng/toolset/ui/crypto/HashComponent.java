@@ -5,6 +5,7 @@ import com.github.morningzeng.toolset.Constants.IconC;
 import com.github.morningzeng.toolset.annotations.ScratchConfig;
 import com.github.morningzeng.toolset.dialog.HashPropDialog;
 import com.github.morningzeng.toolset.model.HashCryptoProp;
+import com.github.morningzeng.toolset.utils.BackgroundTaskUtils;
 import com.github.morningzeng.toolset.utils.GridBagUtils;
 import com.github.morningzeng.toolset.utils.GridBagUtils.GridBagFill;
 import com.github.morningzeng.toolset.utils.HashCrypto;
@@ -23,6 +24,7 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
 
 /**
@@ -106,19 +108,21 @@ public final class HashComponent extends AbstractCryptoComponent<HashCryptoProp>
             dialog.showAndGet();
         });
         this.calculation.addActionListener(e -> {
-            try {
-                final HashCrypto crypto = this.cryptoComboBox.getItem();
-                String enc;
-                if (crypto == HashCrypto.HMAC) {
-                    final HashCryptoProp prop = this.cryptoPropComboBox.getItem();
-                    enc = crypto.enc(this.decryptArea.getText(), prop.getKey());
-                } else {
-                    enc = crypto.enc(this.decryptArea.getText());
-                }
-                this.encryptArea.setText(enc);
-            } catch (Exception ex) {
-                Messages.showMessageDialog(this.project, ex.getMessage(), "Encrypt Error", Messages.getErrorIcon());
+            final HashCrypto crypto = this.cryptoComboBox.getItem();
+            final String text = this.decryptArea.getText();
+            if (crypto != HashCrypto.HMAC) {
+                BackgroundTaskUtils.run(this.project, "Encrypt", text.length(),
+                        indicator -> crypto.enc(text), this.encryptArea::setText);
+                return;
+            }
+            final HashCryptoProp prop = this.cryptoPropComboBox.getItem();
+            if (Objects.isNull(prop) || prop.isDirectory()) {
+                Messages.showErrorDialog(this.project, "Please select a crypto key", "Error");
+                return;
             }
+            final String key = prop.getKey();
+            BackgroundTaskUtils.run(this.project, "Encrypt", text.length(),
+                    indicator -> crypto.enc(text, key), this.encryptArea::setText);
         });
         this.cryptoComboBox.addItemListener(e -> {
             if (e.getStateChange() == ItemEvent.SELECTED) {
@@ -11,6 +11,12 @@ import com.github.morningzeng.toolset.utils.GridBagUtils.Row;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.ui.ComboBox;
 
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
 /**
  * @author Morning Zeng
  * @since 2024-10-31
@@ -37,21 +43,55 @@ public final class SM4Component extends AbstractSymmetricCryptoComponent {
         );
     }
 
+    /**
+     * An {@link SM4} serializes its calls, so each worker gets its own.
+     */
     @Override
-    String enc(final SymmetricCryptoProp cryptoProp) {
-        return this.sm4(cryptoProp).encryptHex(this.decryptArea.getText());
+    Supplier<UnaryOperator<String>> encOperation(final SymmetricCryptoProp cryptoProp) {
+        final Supplier<SM4> sm4 = this.sm4Factory(cryptoProp);
+        return () -> sm4.get()::encryptHex;
     }
 
     @Override
-    String dec(final SymmetricCryptoProp cryptoProp) {
-        return this.sm4(cryptoProp).decryptStr(this.encryptArea.getText());
+    Supplier<UnaryOperator<String>> decOperation(final SymmetricCryptoProp cryptoProp) {
+        final Supplier<SM4> sm4 = this.sm4Factory(cryptoProp);
+        return () -> sm4.get()::decryptStr;
+    }
+
+    @Override
+    FileCrypto encFile(final SymmetricCryptoProp cryptoProp) {
+        final SM4 sm4 = this.sm4(cryptoProp);
+        return (source, target, progress) -> {
+            try (final InputStream in = progressStream(Files.newInputStream(source), progress);
+                 final OutputStream out = Files.newOutputStream(target)) {
+                sm4.encrypt(in, out, false);
+            }
+        };
+    }
+
+    @Override
+    FileCrypto decFile(final SymmetricCryptoProp cryptoProp) {
+        final SM4 sm4 = this.sm4(cryptoProp);
+        return (source, target, progress) -> {
+            try (final InputStream in = progressStream(Files.newInputStream(source), progress);
+                 final OutputStream out = Files.newOutputStream(target)) {
+                sm4.decrypt(in, out, false);
+            }
+        };
     }
 
     private SM4 sm4(final SymmetricCryptoProp cryptoProp) {
+        return this.sm4Factory(cryptoProp).get();
+    }
+
+    /**
+     * Reads the selected settings, so the returned factory can be used off the EDT.
+     */
+    private Supplier<SM4> sm4Factory(final SymmetricCryptoProp cryptoProp) {
         final Mode mode = this.modeComboBox.getItem();
         final Padding padding = this.paddingComboBox.getItem();
         final byte[] key = HexUtil.decodeHex(cryptoProp.getKey());
         final byte[] iv = HexUtil.decodeHex(cryptoProp.getIv());
-        return new SM4(mode, padding, key, iv);
+        return () -> new SM4(mode, padding, key, iv);
     }
 }
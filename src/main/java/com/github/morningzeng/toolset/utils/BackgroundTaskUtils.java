@@ -0,0 +1,113 @@
+package com.github.morningzeng.toolset.utils;
+
+import com.intellij.openapi.progress.EmptyProgressIndicator;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.Task;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.ui.Messages;
+import lombok.SneakyThrows;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.function.Consumer;
+
+/**
+ * Runs the work of a button off the EDT, with a progress indicator and a cancel button, and applies its result
+ * back on the EDT.
+ * <p>
+ * Small inputs are processed inline, a background task costs more than the work itself below
+ * {@link #INLINE_THRESHOLD}.
+ *
+ * @author agent
+ * @since 2026-10-17
+ */
+public final class BackgroundTaskUtils {
+
+    /**
+     * Largest input size, in characters or bytes, processed inline on the EDT.
+     */
+    public static final long INLINE_THRESHOLD = 16 * 1024;
+
+    /**
+     * Runs a task inline when its input is small, otherwise in the background.
+     *
+     * @param project   the project, also parent of the error dialog
+     * @param title     the title of the task, {@code title + " Error"} for failures
+     * @param size      the size of the input
+     * @param task      the work, which must not touch Swing components
+     * @param onSuccess applies the result, on the EDT
+     * @param <T>       the result type
+     */
+    public static <T> void run(final Project project, final String title, final long size,
+                               final BackgroundTask<T> task, final Consumer<? super T> onSuccess) {
+        if (size > INLINE_THRESHOLD) {
+            runInBackground(project, title, task, onSuccess);
+            return;
+        }
+        final T result;
+        try {
+            result = task.compute(new EmptyProgressIndicator());
+        } catch (ProcessCanceledException e) {
+            return;
+        } catch (Exception e) {
+            showError(project, title, e);
+            return;
+        }
+        onSuccess.accept(result);
+    }
+
+    /**
+     * Runs a task in the background. The result is dropped when the task is cancelled, work made of many steps
+     * should also call {@link ProgressIndicator#checkCanceled()} between them to stop early.
+     *
+     * @param project   the project, also parent of the error dialog
+     * @param title     the title of the task, {@code title + " Error"} for failures
+     * @param task      the work, which must not touch Swing components
+     * @param onSuccess applies the result, on the EDT
+     * @param <T>       the result type
+     */
+    public static <T> void runInBackground(final Project project, final String title,
+                                           final BackgroundTask<T> task, final Consumer<? super T> onSuccess) {
+        new Task.Backgroundable(project, title, true) {
+            private T result;
+
+            @SneakyThrows
+            @Override
+            public void run(@NotNull final ProgressIndicator indicator) {
+                this.result = task.compute(indicator);
+            }
+
+            @Override
+            public void onSuccess() {
+                onSuccess.accept(this.result);
+            }
+
+            @Override
+            public void onThrowable(@NotNull final Throwable error) {
+                showError(project, title, error);
+            }
+        }.queue();
+    }
+
+    private static void showError(final Project project, final String title, final Throwable error) {
+        Messages.showMessageDialog(project, error.getMessage(), title + " Error", Messages.getErrorIcon());
+    }
+
+    /**
+     * The work of a background task.
+     *
+     * @param <T> the result type
+     */
+    @FunctionalInterface
+    public interface BackgroundTask<T> {
+        /**
+         * Computes the result.
+         *
+         * @param indicator reports progress, {@link ProgressIndicator#checkCanceled()} throws after a cancellation
+         * @return the result
+         * @throws Exception when the work fails, shown in an error dialog
+         */
+        T compute(ProgressIndicator indicator) throws Exception;
+    }
+
+}
@@ -0,0 +1,141 @@
+package com.github.morningzeng.toolset.utils;
+
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * Applies an encryption or decryption to many independent records, such as tokens pasted one per line, on a
+ * bounded pool of workers.
+ * <p>
+ * Each worker thread gets its own operation from the factory, so operations need not be thread safe. Results
+ * keep the order of the records, and a failing record is reported in its result without stopping the others.
+ * Cancelling the progress indicator stops every worker before its next record.
+ *
+ * @author agent
+ * @since 2026-10-17
+ */
+public class BatchCrypto {
+
+    /**
+     * Number of consecutive records handed to a worker at once.
+     */
+    private static final int CHUNK_SIZE = 64;
+
+    /**
+     * Applies the operation to each line of a text, blank lines are kept blank.
+     *
+     * @param text             the text
+     * @param operationFactory creates the operation of a worker thread
+     * @param indicator        checked for cancellation before each line
+     * @return the result of each line, in order
+     */
+    public static List<Result> lines(final String text, final Supplier<? extends UnaryOperator<String>> operationFactory,
+                                     final ProgressIndicator indicator) {
+        return apply(text.lines().toList(), operationFactory, Runtime.getRuntime().availableProcessors(), indicator);
+    }
+
+    /**
+     * Applies the operation to each record, blank records are kept blank.
+     *
+     * @param records          the records
+     * @param operationFactory creates the operation of a worker thread
+     * @param workers          maximum number of worker threads
+     * @param indicator        checked for cancellation before each record
+     * @return the result of each record, in order
+     * @throws com.intellij.openapi.progress.ProcessCanceledException if the indicator is cancelled
+     */
+    public static List<Result> apply(final List<String> records, final Supplier<? extends UnaryOperator<String>> operationFactory,
+                                     final int workers, final ProgressIndicator indicator) {
+        if (workers <= 0) {
+            throw new IllegalArgumentException("Workers must be positive!");
+        }
+        final Result[] results = new Result[records.size()];
+        final int chunks = (records.size() + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        if (chunks <= 1 || workers == 1) {
+            convert(records, 0, records.size(), operationFactory.get(), indicator, results);
+            return Arrays.asList(results);
+        }
+
+        final ThreadLocal<UnaryOperator<String>> operations = ThreadLocal.withInitial(operationFactory);
+        final ExecutorService executor = AppExecutorUtil.createBoundedApplicationPoolExecutor("Batch Crypto", Math.min(workers, chunks));
+        try {
+            final List<Future<?>> futures = new ArrayList<>(chunks);
+            for (int from = 0; from < records.size(); from += CHUNK_SIZE) {
+                final int start = from;
+                final int end = Math.min(from + CHUNK_SIZE, records.size());
+                futures.add(executor.submit(() -> convert(records, start, end, operations.get(), indicator, results)));
+            }
+            for (final Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            // the cancellation of the indicator, or an error outside of the operation
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Batch interrupted", e);
+        } finally {
+            executor.shutdownNow();
+        }
+        return Arrays.asList(results);
+    }
+
+    private static void convert(final List<String> records, final int from, final int to,
+                                final UnaryOperator<String> operation, final ProgressIndicator indicator, final Result[] results) {
+        for (int i = from; i < to; i++) {
+            indicator.checkCanceled();
+            final String record = records.get(i);
+            if (record.isBlank()) {
+                results[i] = new Result(record, record, null);
+                continue;
+            }
+            try {
+                results[i] = new Result(record, operation.apply(record), null);
+            } catch (Exception e) {
+                results[i] = new Result(record, null, e);
+            }
+        }
+    }
+
+    /**
+     * The outcome of one record.
+     */
+    @Getter
+    @AllArgsConstructor
+    public static final class Result {
+        /**
+         * The record.
+         */
+        private final String input;
+        /**
+         * The encrypted or decrypted record, null when it failed.
+         */
+        private final String output;
+        /**
+         * Why the record failed, null when it succeeded.
+         */
+        private final Exception error;
+
+        public boolean isFailed() {
+            return this.error != null;
+        }
+    }
+
+}
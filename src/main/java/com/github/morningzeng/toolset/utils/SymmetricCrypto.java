@@ -7,15 +7,33 @@ import lombok.Getter;
 import lombok.SneakyThrows;
 
 import javax.crypto.Cipher;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.StandardCharsets;
-import java.util.Base64;
-
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.security.spec.AlgorithmParameterSpec;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.LongConsumer;
+
+import static com.github.morningzeng.toolset.enums.DataToBinaryTypeEnum.BASE64;
 import static com.github.morningzeng.toolset.enums.DataToBinaryTypeEnum.TEXT;
 
 @Getter
-@AllArgsConstructor
 public enum SymmetricCrypto {
 
     /**
@@ -26,69 +44,18 @@ public enum SymmetricCrypto {
      *     </li>
      * </ul>
      */
-    DES("DES", "DES") {
-        @SneakyThrows
-        @Override
-        public String enc(String data, String key, DataToBinaryTypeEnum keyType, String iv, DataToBinaryTypeEnum ivType) {
-            final Cipher cipher = this.cipher(Cipher.ENCRYPT_MODE, key, keyType, iv, ivType);
-            byte[] encryptedValue = cipher.doFinal(data.getBytes(StandardCharsets.UTF_8));
-            return Base64.getEncoder().encodeToString(encryptedValue);
-        }
-
-        @SneakyThrows
-        @Override
-        public String dec(String data, String key, DataToBinaryTypeEnum keyType, String iv, DataToBinaryTypeEnum ivType) {
-            byte[] decodedValue = Base64.getDecoder().decode(data);
-            Cipher cipher = this.cipher(Cipher.DECRYPT_MODE, key, keyType, iv, ivType);
-            byte[] decryptedValue = cipher.doFinal(decodedValue);
-            return new String(decryptedValue, StandardCharsets.UTF_8);
-        }
-    },
+    DES("DES", "DES"),
 
     /**
      * DES/CBC/PKCS5Padding
      */
-    DES_CBC_PKCS5("DES", "DES/CBC/PKCS5Padding") {
-        @SneakyThrows
-        @Override
-        public String enc(String data, String key, DataToBinaryTypeEnum keyType, String iv, DataToBinaryTypeEnum ivType) {
-            final Cipher cipher = this.cipher(Cipher.ENCRYPT_MODE, key, keyType, iv, ivType);
-            byte[] encryptedValue = cipher.doFinal(data.getBytes(StandardCharsets.UTF_8));
-            return Base64.getEncoder().encodeToString(encryptedValue);
-        }
-
-        @SneakyThrows
-        @Override
-        public String dec(String data, String key, DataToBinaryTypeEnum keyType, String iv, DataToBinaryTypeEnum ivType) {
-            byte[] decodedValue = Base64.getDecoder().decode(data);
-            Cipher cipher = this.cipher(Cipher.DECRYPT_MODE, key, keyType, iv, ivType);
-            byte[] decryptedValue = cipher.doFinal(decodedValue);
-            return new String(decryptedValue, StandardCharsets.UTF_8);
-        }
-    },
+    DES_CBC_PKCS5("DES", "DES/CBC/PKCS5Padding"),
 
     /**
      * 3DES
      */
     @SuppressWarnings("SpellCheckingInspection")
-    DES_EDE("DES", "DESede") {
-        @SneakyThrows
-        @Override
-        public String enc(String data, String key, DataToBinaryTypeEnum keyType, String iv, DataToBinaryTypeEnum ivType) {
-            final Cipher cipher = this.cipher(Cipher.ENCRYPT_MODE, key, keyType, iv, ivType);
-            byte[] encryptedValue = cipher.doFinal(data.getBytes(StandardCharsets.UTF_8));
-            return Base64.getEncoder().encodeToString(encryptedValue);
-        }
-
-        @SneakyThrows
-        @Override
-        public String dec(String data, String key, DataToBinaryTypeEnum keyType, String iv, DataToBinaryTypeEnum ivType) {
-            byte[] decodedValue = Base64.getDecoder().decode(data);
-            Cipher cipher = this.cipher(Cipher.DECRYPT_MODE, key, keyType, iv, ivType);
-            byte[] decryptedValue = cipher.doFinal(decodedValue);
-            return new String(decryptedValue, StandardCharsets.UTF_8);
-        }
-    },
+    DES_EDE("DES", "DESede", "DESede"),
 
     /**
      * AES AES/ECB/PKCS5Padding
@@ -98,24 +65,7 @@ public enum SymmetricCrypto {
      *     <li>If the same plaintext is encrypted with the same key, the encrypted ciphertext is exactly the same. This makes it easy to expose the plaintext pattern and is rarely used in practice.</li>
      * </ul>
      */
-    AES_ECB_PKCS5("AES", "AES/ECB/PKCS5Padding") {
-        @SneakyThrows
-        @Override
-        public String enc(String data, String key, DataToBinaryTypeEnum keyType, String iv, DataToBinaryTypeEnum ivType) {
-            final Cipher cipher = this.cipher(Cipher.ENCRYPT_MODE, key, keyType, iv, ivType);
-            byte[] encryptedValue = cipher.doFinal(data.getBytes(StandardCharsets.UTF_8));
-            return Base64.getEncoder().encodeToString(encryptedValue);
-        }
-
-        @SneakyThrows
-        @Override
-        public String dec(String data, String key, DataToBinaryTypeEnum keyType, String iv, DataToBinaryTypeEnum ivType) {
-            byte[] decodedValue = Base64.getDecoder().decode(data);
-            Cipher cipher = this.cipher(Cipher.DECRYPT_MODE, key, keyType, iv, ivType);
-            byte[] decryptedValue = cipher.doFinal(decodedValue);
-            return new String(decryptedValue, StandardCharsets.UTF_8);
-        }
-    },
+    AES_ECB_PKCS5("AES", "AES/ECB/PKCS5Padding"),
 
     /**
      * AES AES/ECB/NoPadding
@@ -125,24 +75,7 @@ public enum SymmetricCrypto {
      *     <li>If the same plaintext is encrypted with the same key, the encrypted ciphertext is exactly the same. This makes it easy to expose the plaintext pattern and is rarely used in practice.</li>
      * </ul>
      */
-    AES_ECB_NO_PADDING("AES", "AES/ECB/NoPadding") {
-        @SneakyThrows
-        @Override
-        public String enc(String data, String key, DataToBinaryTypeEnum keyType, String iv, DataToBinaryTypeEnum ivType) {
-            final Cipher cipher = this.cipher(Cipher.ENCRYPT_MODE, key, keyType, iv, ivType);
-            byte[] encryptedValue = cipher.doFinal(data.getBytes(StandardCharsets.UTF_8));
-            return Base64.getEncoder().encodeToString(encryptedValue);
-        }
-
-        @SneakyThrows
-        @Override
-        public String dec(String data, String key, DataToBinaryTypeEnum keyType, String iv, DataToBinaryTypeEnum ivType) {
-            byte[] decodedValue = Base64.getDecoder().decode(data);
-            Cipher cipher = this.cipher(Cipher.DECRYPT_MODE, key, keyType, iv, ivType);
-            byte[] decryptedValue = cipher.doFinal(decodedValue);
-            return new String(decryptedValue, StandardCharsets.UTF_8);
-        }
-    },
+    AES_ECB_NO_PADDING("AES", "AES/ECB/NoPadding"),
 
     /**
      * AES AES/CBC/PKCS5Padding
@@ -153,24 +86,7 @@ public enum SymmetricCrypto {
      *     <li>It is often used in scenarios such as network transmission, where large amounts of data need to be encrypted.</li>
      * </ul>
      */
-    AES_CBC_PKCS5("AES", "AES/CBC/PKCS5Padding") {
-        @SneakyThrows
-        @Override
-        public String enc(String data, String key, DataToBinaryTypeEnum keyType, String iv, DataToBinaryTypeEnum ivType) {
-            final Cipher cipher = this.cipher(Cipher.ENCRYPT_MODE, key, keyType, iv, ivType);
-            byte[] encryptedValue = cipher.doFinal(data.getBytes(StandardCharsets.UTF_8));
-            return Base64.getEncoder().encodeToString(encryptedValue);
-        }
-
-        @SneakyThrows
-        @Override
-        public String dec(String data, String key, DataToBinaryTypeEnum keyType, String iv, DataToBinaryTypeEnum ivType) {
-            byte[] decodedValue = Base64.getDecoder().decode(data);
-            Cipher cipher = this.cipher(Cipher.DECRYPT_MODE, key, keyType, iv, ivType);
-            byte[] decryptedValue = cipher.doFinal(decodedValue);
-            return new String(decryptedValue, StandardCharsets.UTF_8);
-        }
-    },
+    AES_CBC_PKCS5("AES", "AES/CBC/PKCS5Padding"),
 
     /**
      * AES AES/CFB/NoPadding
@@ -182,24 +98,7 @@ public enum SymmetricCrypto {
      *     </li>
      * </ul>
      */
-    AES_CFB_NO_PADDING("AES", "AES/CFB/NoPadding") {
-        @SneakyThrows
-        @Override
-        public String enc(String data, String key, DataToBinaryTypeEnum keyType, String iv, DataToBinaryTypeEnum ivType) {
-            final Cipher cipher = this.cipher(Cipher.ENCRYPT_MODE, key, keyType, iv, ivType);
-            byte[] encryptedValue = cipher.doFinal(data.getBytes(StandardCharsets.UTF_8));
-            return Base64.getEncoder().encodeToString(encryptedValue);
-        }
-
-        @SneakyThrows
-        @Override
-        public String dec(String data, String key, DataToBinaryTypeEnum keyType, String iv, DataToBinaryTypeEnum ivType) {
-            byte[] decodedValue = Base64.getDecoder().decode(data);
-            Cipher cipher = this.cipher(Cipher.DECRYPT_MODE, key, keyType, iv, ivType);
-            byte[] decryptedValue = cipher.doFinal(decodedValue);
-            return new String(decryptedValue, StandardCharsets.UTF_8);
-        }
-    },
+    AES_CFB_NO_PADDING("AES", "AES/CFB/NoPadding"),
 
     /**
      * AES AES/OFB/NoPadding
@@ -212,24 +111,7 @@ public enum SymmetricCrypto {
      *     </li>
      * </ul>
      */
-    AES_OFB_NO_PADDING("AES", "AES/OFB/NoPadding") {
-        @SneakyThrows
-        @Override
-        public String enc(String data, String key, DataToBinaryTypeEnum keyType, String iv, DataToBinaryTypeEnum ivType) {
-            final Cipher cipher = this.cipher(Cipher.ENCRYPT_MODE, key, keyType, iv, ivType);
-            byte[] encryptedValue = cipher.doFinal(data.getBytes(StandardCharsets.UTF_8));
-            return Base64.getEncoder().encodeToString(encryptedValue);
-        }
-
-        @SneakyThrows
-        @Override
-        public String dec(String data, String key, DataToBinaryTypeEnum keyType, String iv, DataToBinaryTypeEnum ivType) {
-            byte[] decodedValue = Base64.getDecoder().decode(data);
-            Cipher cipher = this.cipher(Cipher.DECRYPT_MODE, key, keyType, iv, ivType);
-            byte[] decryptedValue = cipher.doFinal(decodedValue);
-            return new String(decryptedValue, StandardCharsets.UTF_8);
-        }
-    },
+    AES_OFB_NO_PADDING("AES", "AES/OFB/NoPadding"),
 
     /**
      * AES AES/CTR/NoPadding
@@ -242,24 +124,7 @@ public enum SymmetricCrypto {
      *     </li>
      * </ul>
      */
-    AES_CTR_NO_PADDING("AES", "AES/CTR/NoPadding") {
-        @SneakyThrows
-        @Override
-        public String enc(String data, String key, DataToBinaryTypeEnum keyType, String iv, DataToBinaryTypeEnum ivType) {
-            final Cipher cipher = this.cipher(Cipher.ENCRYPT_MODE, key, keyType, iv, ivType);
-            byte[] encryptedValue = cipher.doFinal(data.getBytes(StandardCharsets.UTF_8));
-            return Base64.getEncoder().encodeToString(encryptedValue);
-        }
-
-        @SneakyThrows
-        @Override
-        public String dec(String data, String key, DataToBinaryTypeEnum keyType, String iv, DataToBinaryTypeEnum ivType) {
-            byte[] decodedValue = Base64.getDecoder().decode(data);
-            Cipher cipher = this.cipher(Cipher.DECRYPT_MODE, key, keyType, iv, ivType);
-            byte[] decryptedValue = cipher.doFinal(decodedValue);
-            return new String(decryptedValue, StandardCharsets.UTF_8);
-        }
-    },
+    AES_CTR_NO_PADDING("AES", "AES/CTR/NoPadding"),
 
     /**
      * Blowfish
@@ -268,81 +133,322 @@ public enum SymmetricCrypto {
      *     <li>is a symmetrical block cipher, its block size is 64 bits, and the key can be of any length (from 32 bits to 448 bits).</li>
      * </ul>
      */
-    BLOWFISH("Blowfish", "Blowfish") {
-        @SneakyThrows
-        @Override
-        public String enc(String data, String key, DataToBinaryTypeEnum keyType, String iv, DataToBinaryTypeEnum ivType) {
-            final Cipher cipher = this.cipher(Cipher.ENCRYPT_MODE, key, keyType, iv, ivType);
-            byte[] encryptedValue = cipher.doFinal(data.getBytes(StandardCharsets.UTF_8));
-            return Base64.getEncoder().encodeToString(encryptedValue);
-        }
+    BLOWFISH("Blowfish", "Blowfish"),
 
-        @SneakyThrows
+    /**
+     * AES AES/GCM/NoPadding
+     * <ul>
+     *     <li>Galois/Counter Mode, CTR encryption followed by a 128-bit authentication tag, so altered ciphertext fails to decrypt.</li>
+     *     <li>The nonce must not be used twice with the same key, so the iv is ignored: each encryption draws a random 12-byte nonce and writes it before the ciphertext.</li>
+     * </ul>
+     */
+    AES_GCM_NO_PADDING("AES", "AES/GCM/NoPadding", "AES", true, iv -> new GCMParameterSpec(128, iv)),
+
+    ;
+
+    /**
+     * Maximum number of decoded keys and ivs kept by {@link #KEY_MATERIALS}.
+     */
+    private static final int KEY_MATERIAL_CACHE_SIZE = 64;
+
+    /**
+     * Decoded keys and ivs by crypto, key, key type, iv and iv type, least
+     * recently used first.
+     */
+    private static final Map<List<Object>, KeyMaterial> KEY_MATERIALS = new LinkedHashMap<>(16, 0.75f, true) {
         @Override
-        public String dec(String data, String key, DataToBinaryTypeEnum keyType, String iv, DataToBinaryTypeEnum ivType) {
-            byte[] decodedValue = Base64.getDecoder().decode(data);
-            Cipher cipher = this.cipher(Cipher.DECRYPT_MODE, key, keyType, iv, ivType);
-            byte[] decryptedValue = cipher.doFinal(decodedValue);
-            return new String(decryptedValue, StandardCharsets.UTF_8);
+        protected boolean removeEldestEntry(final Map.Entry<List<Object>, KeyMaterial> eldest) {
+            return this.size() > KEY_MATERIAL_CACHE_SIZE;
         }
-    },
+    };
 
-    ;
+    /**
+     * Ciphers of the current thread by transformation. A {@link Cipher} is not
+     * thread safe, but returns to its initialized state after each
+     * {@code doFinal}, so it is kept and only initialized again when the mode
+     * or the key material change.
+     */
+    private static final ThreadLocal<Map<String, PooledCipher>> CIPHERS = ThreadLocal.withInitial(HashMap::new);
+
+    /**
+     * Length of the random nonce drawn for each AEAD encryption, written
+     * before the ciphertext.
+     */
+    private static final int AEAD_NONCE_LENGTH = 12;
+
+    private static final SecureRandom RANDOM = new SecureRandom();
 
+    /**
+     * Size of the input buffer used by {@link #transfer}, the output buffer
+     * also holds the few blocks a cipher may keep back or add as padding.
+     */
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The key family, used to group the cryptos in the UI.
+     */
     private final String type;
+    /**
+     * The cipher transformation.
+     */
     private final String algorithm;
+    /**
+     * The algorithm of the secret key.
+     */
+    private final String keyAlgorithm;
+    /**
+     * Whether the mode authenticates the data. Such ciphers refuse to encrypt
+     * twice with the same key and nonce, so the iv is ignored and a random
+     * nonce is written before each ciphertext instead.
+     */
+    private final boolean aead;
+    /**
+     * Creates the cipher parameters from the decoded iv.
+     */
+    private final Function<byte[], AlgorithmParameterSpec> parameterSpec;
+
+    SymmetricCrypto(final String type, final String algorithm) {
+        this(type, algorithm, type);
+    }
+
+    SymmetricCrypto(final String type, final String algorithm, final String keyAlgorithm) {
+        this(type, algorithm, keyAlgorithm, false, IvParameterSpec::new);
+    }
+
+    SymmetricCrypto(final String type, final String algorithm, final String keyAlgorithm, final boolean aead,
+                    final Function<byte[], AlgorithmParameterSpec> parameterSpec) {
+        this.type = type;
+        this.algorithm = algorithm;
+        this.keyAlgorithm = keyAlgorithm;
+        this.aead = aead;
+        this.parameterSpec = parameterSpec;
+    }
 
     /**
-     * AES
+     * Encrypts text, the ciphertext is written in the given encoding.
      *
-     * @param encryptMode {@link int}
-     * @return {@link Cipher}
+     * @param data       the plaintext, encoded in UTF-8
+     * @param outputType the encoding of the ciphertext
+     * @return the encoded ciphertext
+     */
+    String enc(String data, String key, DataToBinaryTypeEnum keyType, String iv, DataToBinaryTypeEnum ivType, final DataToBinaryTypeEnum outputType) {
+        return outputType.text(this.doFinal(Cipher.ENCRYPT_MODE, data.getBytes(StandardCharsets.UTF_8), key, keyType, iv, ivType));
+    }
+
+    /**
+     * Decrypts text, the ciphertext is read in the given encoding.
+     *
+     * @param data      the encoded ciphertext
+     * @param inputType the encoding of the ciphertext
+     * @return the plaintext, decoded from UTF-8
+     */
+    String dec(String data, String key, DataToBinaryTypeEnum keyType, String iv, DataToBinaryTypeEnum ivType, final DataToBinaryTypeEnum inputType) {
+        return new String(this.doFinal(Cipher.DECRYPT_MODE, inputType.bytes(data), key, keyType, iv, ivType), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Encrypts or decrypts with the cipher of the current thread, skipping the
+     * provider lookup, the key decoding and the initialization when they are
+     * the same as for the previous call.
+     *
+     * @param encryptMode {@link Cipher#ENCRYPT_MODE} or {@link Cipher#DECRYPT_MODE}
+     * @param data        the input
+     * @return the output
      */
     @SneakyThrows
-    Cipher cipher(int encryptMode, String key, final DataToBinaryTypeEnum keyType, String iv, final DataToBinaryTypeEnum ivType) {
-        final Cipher cipher = Cipher.getInstance(this.getAlgorithm());
-        if (!StringUtil.isEmpty(iv)) {
-            cipher.init(
-                    encryptMode,
-                    new SecretKeySpec(keyType.bytes(key), this.getType()),
-                    new IvParameterSpec(ivType.bytes(iv))
-            );
-            return cipher;
+    byte[] doFinal(int encryptMode, byte[] data, String key, final DataToBinaryTypeEnum keyType, String iv, final DataToBinaryTypeEnum ivType) {
+        if (this.aead) {
+            if (encryptMode == Cipher.ENCRYPT_MODE) {
+                final byte[] nonce = randomNonce();
+                final Cipher cipher = this.aeadCipher(encryptMode, key, keyType, nonce);
+                final byte[] output = Arrays.copyOf(nonce, AEAD_NONCE_LENGTH + cipher.getOutputSize(data.length));
+                cipher.doFinal(data, 0, data.length, output, AEAD_NONCE_LENGTH);
+                return output;
+            }
+            if (data.length < AEAD_NONCE_LENGTH) {
+                throw new IllegalArgumentException("Ciphertext is shorter than its nonce");
+            }
+            final Cipher cipher = this.aeadCipher(encryptMode, key, keyType, Arrays.copyOf(data, AEAD_NONCE_LENGTH));
+            return cipher.doFinal(data, AEAD_NONCE_LENGTH, data.length - AEAD_NONCE_LENGTH);
+        }
+        final PooledCipher pooled = this.cipher(encryptMode, key, keyType, iv, ivType);
+        try {
+            return pooled.cipher.doFinal(data);
+        } catch (GeneralSecurityException | RuntimeException e) {
+            // the state of a cipher after a failure is up to the provider
+            pooled.keyMaterial = null;
+            throw e;
         }
-        cipher.init(
-                encryptMode,
-                new SecretKeySpec(keyType.bytes(key), this.getType())
-        );
-        return cipher;
     }
 
     /**
-     * encrypt
+     * Encrypts or decrypts the remaining bytes of a buffer into another one.
      *
-     * @param data {@link String}
-     * @param key  {@link String}
-     * @param iv   {@link String}
-     * @return {@link String}
+     * @param encryptMode {@link Cipher#ENCRYPT_MODE} or {@link Cipher#DECRYPT_MODE}
+     * @param input       the input, consumed
+     * @param output      the output, large enough for the whole result
+     * @return the number of bytes written
      */
-    String enc(String data, String key, String iv) {
-        return this.enc(data, key, TEXT, iv, TEXT);
+    @SneakyThrows
+    int doFinal(int encryptMode, ByteBuffer input, ByteBuffer output, String key, final DataToBinaryTypeEnum keyType,
+                String iv, final DataToBinaryTypeEnum ivType) {
+        if (this.aead) {
+            if (encryptMode == Cipher.ENCRYPT_MODE) {
+                final byte[] nonce = randomNonce();
+                final Cipher cipher = this.aeadCipher(encryptMode, key, keyType, nonce);
+                if (output.remaining() < AEAD_NONCE_LENGTH + cipher.getOutputSize(input.remaining())) {
+                    throw new ShortBufferException("Output buffer too small for the nonce and the ciphertext");
+                }
+                output.put(nonce);
+                return AEAD_NONCE_LENGTH + cipher.doFinal(input, output);
+            }
+            if (input.remaining() < AEAD_NONCE_LENGTH) {
+                throw new IllegalArgumentException("Ciphertext is shorter than its nonce");
+            }
+            final byte[] nonce = new byte[AEAD_NONCE_LENGTH];
+            input.get(nonce);
+            return this.aeadCipher(encryptMode, key, keyType, nonce).doFinal(input, output);
+        }
+        final PooledCipher pooled = this.cipher(encryptMode, key, keyType, iv, ivType);
+        try {
+            return pooled.cipher.doFinal(input, output);
+        } catch (GeneralSecurityException | RuntimeException e) {
+            pooled.keyMaterial = null;
+            throw e;
+        }
     }
 
     /**
-     * decrypt
+     * Encrypts or decrypts a stream of any length with the cipher of the
+     * current thread, through two fixed-size direct buffers. Unlike the string
+     * methods, the output is the raw ciphertext or plaintext.
+     * <p>
+     * AEAD cryptos are refused: their decryption only releases the plaintext
+     * once the tag is verified, so the provider would buffer the whole stream.
      *
-     * @param data {@link String}
-     * @param key  {@link String}
-     * @param iv   {@link String}
-     * @return {@link String}
+     * @param encryptMode {@link Cipher#ENCRYPT_MODE} or {@link Cipher#DECRYPT_MODE}
+     * @param source      the input, read until its end
+     * @param target      the output, not closed
+     * @param progress    receives the number of bytes read so far after each buffer
+     * @return the number of bytes read
+     * @throws UnsupportedOperationException for an AEAD crypto
      */
-    String dec(String data, String key, String iv) {
-        return this.dec(data, key, TEXT, iv, TEXT);
+    @SneakyThrows
+    long transfer(int encryptMode, ReadableByteChannel source, WritableByteChannel target, String key, final DataToBinaryTypeEnum keyType,
+                  String iv, final DataToBinaryTypeEnum ivType, final LongConsumer progress) {
+        if (this.aead) {
+            throw new UnsupportedOperationException("Streaming is not supported in " + this.getAlgorithm());
+        }
+        final PooledCipher pooled = this.cipher(encryptMode, key, keyType, iv, ivType);
+        final ByteBuffer input = ByteBuffer.allocateDirect(STREAM_BUFFER_SIZE);
+        final ByteBuffer output = ByteBuffer.allocateDirect(STREAM_BUFFER_SIZE + 2 * pooled.cipher.getBlockSize());
+        long total = 0;
+        try {
+            while (source.read(input) >= 0) {
+                input.flip();
+                total += input.remaining();
+                output.clear();
+                pooled.cipher.update(input, output);
+                input.clear();
+                writeFully(output.flip(), target);
+                progress.accept(total);
+            }
+            final int finalSize = pooled.cipher.getOutputSize(0);
+            final ByteBuffer last = finalSize <= output.capacity() ? output.clear() : ByteBuffer.allocate(finalSize);
+            pooled.cipher.doFinal(input.limit(0), last);
+            writeFully(last.flip(), target);
+            return total;
+        } catch (GeneralSecurityException | IOException | RuntimeException e) {
+            pooled.keyMaterial = null;
+            throw e;
+        }
     }
 
-    abstract String enc(String data, String key, DataToBinaryTypeEnum keyType, String iv, DataToBinaryTypeEnum ivType);
+    private static void writeFully(final ByteBuffer buffer, final WritableByteChannel target) throws IOException {
+        while (buffer.hasRemaining()) {
+            target.write(buffer);
+        }
+    }
 
-    abstract String dec(String data, String key, DataToBinaryTypeEnum keyType, String iv, DataToBinaryTypeEnum ivType);
+    /**
+     * Gets the cipher of the current thread, initialized for the given mode and
+     * key material.
+     *
+     * @param encryptMode {@link int}
+     * @return {@link PooledCipher}
+     */
+    @SneakyThrows
+    PooledCipher cipher(int encryptMode, String key, final DataToBinaryTypeEnum keyType, String iv, final DataToBinaryTypeEnum ivType) {
+        final KeyMaterial keyMaterial = this.keyMaterial(key, keyType, iv, ivType);
+        final PooledCipher pooled = this.pooledCipher();
+        // without an iv, encryption in a feedback mode draws a random one at each init
+        if (pooled.mode == encryptMode && pooled.keyMaterial == keyMaterial
+                && (keyMaterial.params != null || pooled.cipher.getIV() == null)) {
+            return pooled;
+        }
+        pooled.init(encryptMode, keyMaterial);
+        return pooled;
+    }
+
+    /**
+     * Gets the cipher of the current thread, initialized for an AEAD mode with
+     * the key and the nonce of one message.
+     *
+     * @param encryptMode {@link Cipher#ENCRYPT_MODE} or {@link Cipher#DECRYPT_MODE}
+     * @param nonce       a random nonce to encrypt, the one read before the ciphertext to decrypt
+     * @return {@link Cipher}
+     */
+    Cipher aeadCipher(int encryptMode, String key, final DataToBinaryTypeEnum keyType, final byte[] nonce) {
+        final KeyMaterial keyMaterial = this.keyMaterial(key, keyType, null, null);
+        final PooledCipher pooled = this.pooledCipher();
+        pooled.init(encryptMode, new KeyMaterial(keyMaterial.key, this.parameterSpec.apply(nonce)));
+        return pooled.cipher;
+    }
+
+    @SneakyThrows
+    private PooledCipher pooledCipher() {
+        PooledCipher pooled = CIPHERS.get().get(this.getAlgorithm());
+        if (pooled == null) {
+            pooled = new PooledCipher(Cipher.getInstance(this.getAlgorithm()));
+            CIPHERS.get().put(this.getAlgorithm(), pooled);
+        }
+        return pooled;
+    }
+
+    private static byte[] randomNonce() {
+        final byte[] nonce = new byte[AEAD_NONCE_LENGTH];
+        RANDOM.nextBytes(nonce);
+        return nonce;
+    }
+
+    /**
+     * Gets the decoded key and iv, from {@link #KEY_MATERIALS} when they were
+     * used recently.
+     *
+     * @return {@link KeyMaterial}
+     */
+    KeyMaterial keyMaterial(String key, final DataToBinaryTypeEnum keyType, String iv, final DataToBinaryTypeEnum ivType) {
+        // AEAD modes draw a nonce for each message instead
+        final boolean hasIv = !this.aead && !StringUtil.isEmpty(iv);
+        final List<Object> cacheKey = hasIv
+                ? List.of(this, key, keyType, iv, ivType)
+                : List.of(this, key, keyType);
+        synchronized (KEY_MATERIALS) {
+            final KeyMaterial keyMaterial = KEY_MATERIALS.get(cacheKey);
+            if (keyMaterial != null) {
+                return keyMaterial;
+            }
+        }
+        // decoded outside the lock, failures are not cached
+        final KeyMaterial keyMaterial = new KeyMaterial(
+                new SecretKeySpec(keyType.bytes(key), this.getKeyAlgorithm()),
+                hasIv ? this.parameterSpec.apply(ivType.bytes(iv)) : null
+        );
+        synchronized (KEY_MATERIALS) {
+            final KeyMaterial cached = KEY_MATERIALS.putIfAbsent(cacheKey, keyMaterial);
+            return cached != null ? cached : keyMaterial;
+        }
+    }
 
     public SymmetricCryptoSupport crypto(final String key) {
         return SymmetricCryptoSupport.crypto(this, key, null);
@@ -360,39 +466,208 @@ public enum SymmetricCrypto {
         return SymmetricCryptoSupport.crypto(this, key, keyType, iv, ivType);
     }
 
+    /**
+     * A crypto bound to a key and an iv.
+     * <p>
+     * Text is encrypted from UTF-8 into {@code BASE64} ciphertext unless another encoding is given. The
+     * {@code byte[]}, {@link ByteBuffer} and channel methods work on the raw ciphertext, without any encoding.
+     * AEAD cryptos ignore the iv: their ciphertext starts with the random nonce it was encrypted with.
+     */
     public interface SymmetricCryptoSupport {
 
         static SymmetricCryptoSupport crypto(SymmetricCrypto crypto, String key, String iv) {
-            return new SymmetricCryptoSupport() {
-                @Override
-                public String enc(final String data) {
-                    return crypto.enc(data, key, iv);
-                }
-
-                @Override
-                public String dec(final String data) {
-                    return crypto.dec(data, key, iv);
-                }
-            };
+            return new KeyedCrypto(crypto, key, TEXT, iv, TEXT);
         }
 
         static SymmetricCryptoSupport crypto(SymmetricCrypto crypto, String key, final DataToBinaryTypeEnum keyType, String iv, final DataToBinaryTypeEnum ivType) {
-            return new SymmetricCryptoSupport() {
-                @Override
-                public String enc(final String data) {
-                    return crypto.enc(data, key, keyType, iv, ivType);
-                }
+            return new KeyedCrypto(crypto, key, keyType, iv, ivType);
+        }
 
-                @Override
-                public String dec(final String data) {
-                    return crypto.dec(data, key, keyType, iv, ivType);
-                }
-            };
+        default String enc(String data) {
+            return this.enc(data, BASE64);
+        }
+
+        default String dec(String data) {
+            return this.dec(data, BASE64);
+        }
+
+        /**
+         * Encrypts text.
+         *
+         * @param data       the plaintext
+         * @param outputType the encoding of the ciphertext
+         * @return the encoded ciphertext
+         */
+        String enc(String data, DataToBinaryTypeEnum outputType);
+
+        /**
+         * Decrypts text.
+         *
+         * @param data      the encoded ciphertext
+         * @param inputType the encoding of the ciphertext
+         * @return the plaintext
+         */
+        String dec(String data, DataToBinaryTypeEnum inputType);
+
+        byte[] enc(byte[] data);
+
+        byte[] dec(byte[] data);
+
+        /**
+         * Encrypts the remaining bytes of a buffer.
+         *
+         * @param input  the plaintext, consumed
+         * @param output receives the ciphertext, large enough for it
+         * @return the number of bytes written
+         */
+        int enc(ByteBuffer input, ByteBuffer output);
+
+        /**
+         * Decrypts the remaining bytes of a buffer.
+         *
+         * @param input  the ciphertext, consumed
+         * @param output receives the plaintext, large enough for it
+         * @return the number of bytes written
+         */
+        int dec(ByteBuffer input, ByteBuffer output);
+
+        /**
+         * Encrypts a stream into raw ciphertext. Not supported by AEAD cryptos.
+         *
+         * @param source   the plaintext, read until its end
+         * @param target   the ciphertext, not closed
+         * @param progress receives the number of bytes read so far
+         * @return the number of bytes read
+         */
+        long enc(ReadableByteChannel source, WritableByteChannel target, LongConsumer progress);
+
+        /**
+         * Decrypts raw ciphertext from a stream. Not supported by AEAD cryptos.
+         *
+         * @param source   the ciphertext, read until its end
+         * @param target   the plaintext, not closed
+         * @param progress receives the number of bytes read so far
+         * @return the number of bytes read
+         */
+        long dec(ReadableByteChannel source, WritableByteChannel target, LongConsumer progress);
+
+        /**
+         * Encrypts a file, replacing the target.
+         *
+         * @param source   the plaintext file
+         * @param target   the ciphertext file
+         * @param progress receives the number of bytes read so far
+         * @return the number of bytes read
+         */
+        @SneakyThrows
+        default long enc(Path source, Path target, LongConsumer progress) {
+            try (final FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+                 final FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                return this.enc(in, out, progress);
+            }
+        }
+
+        /**
+         * Decrypts a file, replacing the target.
+         *
+         * @param source   the ciphertext file
+         * @param target   the plaintext file
+         * @param progress receives the number of bytes read so far
+         * @return the number of bytes read
+         */
+        @SneakyThrows
+        default long dec(Path source, Path target, LongConsumer progress) {
+            try (final FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+                 final FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                return this.dec(in, out, progress);
+            }
+        }
+
+    }
+
+    /**
+     * The {@link SymmetricCryptoSupport} of a crypto, key and iv.
+     */
+    @AllArgsConstructor
+    private static final class KeyedCrypto implements SymmetricCryptoSupport {
+        private final SymmetricCrypto crypto;
+        private final String key;
+        private final DataToBinaryTypeEnum keyType;
+        private final String iv;
+        private final DataToBinaryTypeEnum ivType;
+
+        @Override
+        public String enc(final String data, final DataToBinaryTypeEnum outputType) {
+            return this.crypto.enc(data, this.key, this.keyType, this.iv, this.ivType, outputType);
+        }
+
+        @Override
+        public String dec(final String data, final DataToBinaryTypeEnum inputType) {
+            return this.crypto.dec(data, this.key, this.keyType, this.iv, this.ivType, inputType);
+        }
+
+        @Override
+        public byte[] enc(final byte[] data) {
+            return this.crypto.doFinal(Cipher.ENCRYPT_MODE, data, this.key, this.keyType, this.iv, this.ivType);
+        }
+
+        @Override
+        public byte[] dec(final byte[] data) {
+            return this.crypto.doFinal(Cipher.DECRYPT_MODE, data, this.key, this.keyType, this.iv, this.ivType);
+        }
+
+        @Override
+        public int enc(final ByteBuffer input, final ByteBuffer output) {
+            return this.crypto.doFinal(Cipher.ENCRYPT_MODE, input, output, this.key, this.keyType, this.iv, this.ivType);
+        }
+
+        @Override
+        public int dec(final ByteBuffer input, final ByteBuffer output) {
+            return this.crypto.doFinal(Cipher.DECRYPT_MODE, input, output, this.key, this.keyType, this.iv, this.ivType);
+        }
+
+        @Override
+        public long enc(final ReadableByteChannel source, final WritableByteChannel target, final LongConsumer progress) {
+            return this.crypto.transfer(Cipher.ENCRYPT_MODE, source, target, this.key, this.keyType, this.iv, this.ivType, progress);
         }
 
-        String enc(String data);
+        @Override
+        public long dec(final ReadableByteChannel source, final WritableByteChannel target, final LongConsumer progress) {
+            return this.crypto.transfer(Cipher.DECRYPT_MODE, source, target, this.key, this.keyType, this.iv, this.ivType, progress);
+        }
+    }
 
-        String dec(String data);
+    /**
+     * A decoded key and its optional cipher parameters.
+     */
+    @AllArgsConstructor
+    static final class KeyMaterial {
+        private final SecretKeySpec key;
+        private final AlgorithmParameterSpec params;
+    }
 
+    /**
+     * A cipher with the mode and key material it was last initialized with.
+     */
+    static final class PooledCipher {
+        private final Cipher cipher;
+        private int mode;
+        private KeyMaterial keyMaterial;
+
+        PooledCipher(final Cipher cipher) {
+            this.cipher = cipher;
+        }
+
+        @SneakyThrows
+        void init(final int mode, final KeyMaterial keyMaterial) {
+            this.keyMaterial = null;
+            if (keyMaterial.params != null) {
+                this.cipher.init(mode, keyMaterial.key, keyMaterial.params);
+            } else {
+                this.cipher.init(mode, keyMaterial.key);
+            }
+            this.mode = mode;
+            this.keyMaterial = keyMaterial;
+        }
     }
-}
\ No newline at end of file
+}
@@ -1,5 +1,6 @@
 package com.github.morningzeng.toolset.utils.asciiimage;
 
+import com.intellij.util.concurrency.AppExecutorUtil;
 import com.intellij.util.ui.ImageUtil;
 import lombok.Setter;
 
@@ -11,6 +12,11 @@ import java.io.BufferedOutputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 /**
  * Class AnimatedGifEncoder - Encodes a GIF file consisting of one or
@@ -74,6 +80,54 @@ public class AnimatedGifEncoder {
     protected boolean firstFrame = true;
     protected boolean sizeSet = false; // if false, get size from first frame
     protected int sample = 10; // default sample interval for quantizer
+    /**
+     * whether the palette of the first frame is reused for every frame
+     * <p>
+     * -- SETTER --
+     * <p>
+     * Sets whether a single global palette is used for every frame.
+     * The palette is built from the first frame, and later frames
+     * are mapped to it instead of being quantized again, so they
+     * carry no local color table.  Well suited to frames sharing
+     * their colors, such as ascii art.  Must be invoked before the
+     * first image is added.
+     */
+    @Setter
+    protected boolean globalPalette = false;
+    /**
+     * whether the fixed 256 gray levels palette is used
+     * <p>
+     * -- SETTER --
+     * <p>
+     * Sets whether frames are mapped to a fixed palette of 256 gray
+     * levels instead of a quantized one.  Colored pixels are mapped
+     * to the gray nearest to them.
+     */
+    @Setter
+    protected boolean grayscalePalette = false;
+    /**
+     * whether frames only carry the pixels changed since the previous one
+     * <p>
+     * -- SETTER --
+     * <p>
+     * Sets whether frames after the first are written as the
+     * bounding rectangle of the pixels they change, drawn over
+     * the previous frame, with unchanged pixels inside it made
+     * transparent when the palette has a spare entry.  Frames
+     * use disposal code 1 (leave in place) and the transparent
+     * color is ignored.  Shrinks animations whose frames differ
+     * little, such as ascii art.  Must be invoked before the
+     * first image is added.
+     */
+    @Setter
+    protected boolean deltaFrames = false;
+    protected int[] canvas; // RGB colors shown after the last delta frame
+    protected Palette palette; // global palette, once built
+    protected int quantizerThreads = 0; // 0 = quantize on the calling thread
+    protected ExecutorService quantizer; // quantizes upcoming frames
+    protected final Deque<Future<QuantizedFrame>> pendingFrames = new ArrayDeque<>(); // frames to write, in order
+    protected Throwable failure; // why a frame could not be quantized, the output is then incomplete
+    protected final LZWEncoder lzw = new LZWEncoder(); // reused for every frame
 
     /**
      * Sets the delay time between each frame, or changes it
@@ -124,7 +178,7 @@ public class AnimatedGifEncoder {
      */
     @SuppressWarnings("UnusedReturnValue")
     public boolean addFrame(BufferedImage im) {
-        if ((im == null) || !started) {
+        if ((im == null) || !started || (failure != null)) {
             return false;
         }
         boolean ok = true;
@@ -135,32 +189,193 @@ public class AnimatedGifEncoder {
             }
             image = im;
             getImagePixels(); // convert to correct format if necessary
-            analyzePixels(); // build color table & map pixels
-            if (firstFrame) {
-                writeLSD(); // logical screen descriptior
-                writePalette(); // global color table
-                if (repeat >= 0) {
-                    // use NS app extension to indicate reps
-                    writeNetscapeExt();
-                }
+            QuantizedFrame frame = deltaFrames
+                    ? new QuantizedFrame(delay, 1, null) // leave in place, transparency is managed
+                    : new QuantizedFrame(delay, dispose, transparent);
+            if (globalPalette && (palette == null)) {
+                palette = createPalette(pixels); // shared by every frame
             }
-            writeGraphicCtrlExt(); // write graphic control extension
-            writeImageDesc(); // image descriptor
-            if (!firstFrame) {
-                writePalette(); // local color table
+            if (quantizerThreads > 0) {
+                // the caller may reuse its image once this returns
+                byte[] framePixels = (image == im) ? pixels.clone() : pixels;
+                pendingFrames.add(quantizer().submit(() -> quantize(frame, framePixels)));
+                ok = writePendingFrames(quantizerThreads);
+            } else {
+                writeFrame(quantize(frame, pixels)); // build color table & map pixels
             }
-            writePixels(); // encode and write pixel data
-            firstFrame = false;
+            pixels = null;
         } catch (IOException e) {
             ok = false;
         }
         return ok;
     }
 
+    /**
+     * Writes a quantized frame.
+     */
+    protected void writeFrame(QuantizedFrame frame) throws IOException {
+        frame.w = width;
+        frame.h = height;
+        if (deltaFrames) {
+            diffFrame(frame);
+        }
+        indexedPixels = frame.indexedPixels;
+        colorTab = frame.colorTab;
+        usedEntry = frame.usedEntry;
+        transIndex = frame.transIndex;
+        colorDepth = 8;
+        palSize = 7;
+        if (firstFrame) {
+            writeLSD(); // logical screen descriptior
+            writePalette(); // global color table
+            if (repeat >= 0) {
+                // use NS app extension to indicate reps
+                writeNetscapeExt();
+            }
+        }
+        writeGraphicCtrlExt(frame); // write graphic control extension
+        writeImageDesc(frame); // image descriptor
+        if (!firstFrame && !globalPalette) {
+            writePalette(); // local color table
+        }
+        writePixels(); // encode and write pixel data
+        firstFrame = false;
+    }
+
+    /**
+     * Crops a frame to the rectangle of pixels whose color differs
+     * from the canvas, marks unchanged pixels in it transparent
+     * and updates the canvas.  The first frame is kept whole.
+     */
+    protected void diffFrame(QuantizedFrame frame) {
+        byte[] tab = frame.colorTab;
+        byte[] indexed = frame.indexedPixels;
+        if (canvas == null) {
+            canvas = new int[width * height];
+            for (int i = 0; i < canvas.length; i++) {
+                canvas[i] = rgb(tab, indexed[i] & 0xff);
+            }
+            return;
+        }
+
+        // bounding rectangle of changed pixels
+        int minX = width, minY = height, maxX = -1, maxY = -1;
+        for (int y = 0, i = 0; y < height; y++) {
+            for (int x = 0; x < width; x++, i++) {
+                if (rgb(tab, indexed[i] & 0xff) != canvas[i]) {
+                    minX = Math.min(minX, x);
+                    maxX = Math.max(maxX, x);
+                    minY = Math.min(minY, y);
+                    maxY = Math.max(maxY, y);
+                }
+            }
+        }
+        if (maxX < 0) {
+            minX = minY = maxX = maxY = 0; // unchanged, keep one pixel for the delay
+        }
+
+        // any palette entry the frame does not use can be transparent
+        int trans = -1;
+        for (int i = 0; (i < frame.usedEntry.length) && (trans < 0); i++) {
+            if (!frame.usedEntry[i]) {
+                trans = i;
+            }
+        }
+
+        int w = maxX - minX + 1;
+        int h = maxY - minY + 1;
+        byte[] cropped = new byte[w * h];
+        for (int y = 0, j = 0; y < h; y++) {
+            for (int x = 0, i = (minY + y) * width + minX; x < w; x++, i++, j++) {
+                int c = rgb(tab, indexed[i] & 0xff);
+                if ((c == canvas[i]) && (trans >= 0)) {
+                    cropped[j] = (byte) trans;
+                } else {
+                    cropped[j] = indexed[i];
+                    canvas[i] = c;
+                }
+            }
+        }
+        frame.x = minX;
+        frame.y = minY;
+        frame.w = w;
+        frame.h = h;
+        frame.indexedPixels = cropped;
+        frame.deltaTransparency = trans >= 0;
+        frame.transIndex = Math.max(trans, 0);
+    }
+
+    /**
+     * Returns the RGB color of a palette entry
+     */
+    private static int rgb(byte[] colorTab, int index) {
+        int k = 3 * index;
+        return ((colorTab[k] & 0xff) << 16) | ((colorTab[k + 1] & 0xff) << 8) | (colorTab[k + 2] & 0xff);
+    }
+
+    /**
+     * Waits for the oldest frames being quantized and writes them,
+     * until at most <code>keep</code> remain.  If a frame could not
+     * be quantized, the frames after it are cancelled and dropped,
+     * and the cause is kept in <code>getFailure()</code>.
+     *
+     * @return false if a frame could not be quantized.
+     */
+    protected boolean writePendingFrames(int keep) throws IOException {
+        while (pendingFrames.size() > keep) {
+            try {
+                writeFrame(pendingFrames.remove().get());
+            } catch (ExecutionException e) {
+                fail(e.getCause());
+                return false;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                fail(e);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Records why the output is incomplete and cancels the frames still
+     * being quantized.
+     */
+    protected void fail(Throwable cause) {
+        failure = cause;
+        for (Future<QuantizedFrame> frame : pendingFrames) {
+            frame.cancel(true);
+        }
+        pendingFrames.clear();
+    }
+
+    /**
+     * Gets why a frame could not be quantized, if one could not.  The
+     * frames from that one on were dropped and <code>finish()</code>
+     * leaves the output without its trailer.  Cleared by the next
+     * <code>start()</code>.
+     *
+     * @return the cause, or null if every frame was quantized.
+     */
+    public Throwable getFailure() {
+        return failure;
+    }
+
+    /**
+     * Gets the quantizer threads, starting them if needed.
+     */
+    protected ExecutorService quantizer() {
+        if (quantizer == null) {
+            quantizer = AppExecutorUtil.createBoundedApplicationPoolExecutor("Gif Quantizer", quantizerThreads);
+        }
+        return quantizer;
+    }
+
     /**
      * Flushes any pending data and closes output file.
      * If writing to an OutputStream, the stream is not
-     * closed.
+     * closed.  If a frame could not be quantized, the
+     * GIF trailer is not written and false is returned.
      */
     @SuppressWarnings("UnusedReturnValue")
     public boolean finish() {
@@ -170,7 +385,10 @@ public class AnimatedGifEncoder {
         boolean ok = true;
         started = false;
         try {
-            out.write(0x3b); // gif trailer
+            ok = (failure == null) && writePendingFrames(0);
+            if (ok) {
+                out.write(0x3b); // gif trailer
+            }
             out.flush();
             if (closeStream) {
                 out.close();
@@ -188,6 +406,13 @@ public class AnimatedGifEncoder {
         colorTab = null;
         closeStream = false;
         firstFrame = true;
+        palette = null;
+        canvas = null;
+        pendingFrames.clear();
+        if (quantizer != null) {
+            quantizer.shutdownNow();
+            quantizer = null;
+        }
 
         return ok;
     }
@@ -221,6 +446,22 @@ public class AnimatedGifEncoder {
         sample = quality;
     }
 
+    /**
+     * Sets the number of threads quantizing upcoming frames while
+     * the current one is being encoded.  Frames are then written
+     * once that many frames are queued behind them, or on
+     * <code>finish()</code>.  0, the default, quantizes each frame
+     * on the calling thread.  Must be invoked before the first
+     * image is added.
+     *
+     * @param threads int number of threads.
+     */
+    public void setQuantizerThreads(int threads) {
+        if (quantizer == null) {
+            quantizerThreads = Math.max(threads, 0);
+        }
+    }
+
     /**
      * Sets the GIF frame size.  The default size is the
      * size of the first frame added if this method is
@@ -257,6 +498,7 @@ public class AnimatedGifEncoder {
         }
         boolean ok = true;
         closeStream = false;
+        failure = null;
         out = os;
         try {
             writeString("GIF89a"); // header
@@ -285,45 +527,63 @@ public class AnimatedGifEncoder {
     }
 
     /**
-     * Analyzes image colors and creates color map.
+     * Creates the palette of a frame: the fixed gray levels, or
+     * colors quantized from its pixels.
      */
-    protected void analyzePixels() {
-        int len = pixels.length;
-        int nPix = len / 3;
-        indexedPixels = new byte[nPix];
-        NeuQuant nq = new NeuQuant(pixels, len, sample);
-        // initialize quantizer
-        colorTab = nq.process(); // create reduced palette
-        // convert map from BGR to RGB
-        for (int i = 0; i < colorTab.length; i += 3) {
-            byte temp = colorTab[i];
-            colorTab[i] = colorTab[i + 2];
-            colorTab[i + 2] = temp;
-            usedEntry[i / 3] = false;
-        }
-        // map image pixels to new palette
+    protected Palette createPalette(byte[] pixels) {
+        return grayscalePalette ? Palette.GRAYSCALE : Palette.quantize(pixels, sample);
+    }
+
+    /**
+     * Analyzes image colors, creates color map and maps the pixels
+     * to it.  Distinct colors are only mapped once.  May run on a
+     * quantizer thread, so only the global palette is shared.
+     */
+    protected QuantizedFrame quantize(QuantizedFrame frame, byte[] pixels) {
+        Palette pal = (palette != null) ? palette : createPalette(pixels);
+        int nPix = pixels.length / 3;
+        byte[] indexed = new byte[nPix];
+        boolean[] used = new boolean[256];
         int k = 0;
-        for (int i = 0; i < nPix; i++) {
-            int index = nq.map(pixels[k++] & 0xff, pixels[k++] & 0xff, pixels[k++] & 0xff);
-            usedEntry[index] = true;
-            indexedPixels[i] = (byte) index;
+        if (pal.quantizer == null) {
+            byte[] grayLevels = Palette.GRAY_LEVELS;
+            for (int i = 0; i < nPix; i++) {
+                int index = grayLevels[(pixels[k++] & 0xff) + (pixels[k++] & 0xff) + (pixels[k++] & 0xff)] & 0xff;
+                used[index] = true;
+                indexed[i] = (byte) index;
+            }
+        } else {
+            ColorIndexTable lookup = new ColorIndexTable(256);
+            for (int i = 0; i < nPix; i++) {
+                int b = pixels[k++] & 0xff;
+                int g = pixels[k++] & 0xff;
+                int r = pixels[k++] & 0xff;
+                int color = ColorIndexTable.pack(b, g, r);
+                int index = lookup.get(color);
+                if (index == ColorIndexTable.MISSING) {
+                    index = pal.quantizer.map(b, g, r);
+                    if (lookup.size() < Palette.MAX_LOOKUP_COLORS) {
+                        lookup.put(color, index);
+                    }
+                }
+                used[index] = true;
+                indexed[i] = (byte) index;
+            }
         }
-        pixels = null;
-        colorDepth = 8;
-        palSize = 7;
+        frame.indexedPixels = indexed;
+        frame.colorTab = pal.colorTab;
+        frame.usedEntry = used;
         // get closest match to transparent color if specified
-        if (transparent != null) {
-            transIndex = findClosest(transparent);
+        if (frame.transparent != null) {
+            frame.transIndex = findClosest(frame.transparent, pal.colorTab, used);
         }
+        return frame;
     }
 
     /**
-     * Returns index of palette color closest to c
+     * Returns index of used palette color closest to c
      */
-    protected int findClosest(Color c) {
-        if (colorTab == null) {
-            return -1;
-        }
+    protected static int findClosest(Color c, byte[] colorTab, boolean[] usedEntry) {
         int r = c.getRed();
         int g = c.getGreen();
         int b = c.getBlue();
@@ -365,20 +625,20 @@ public class AnimatedGifEncoder {
     /**
      * Writes Graphic Control Extension
      */
-    protected void writeGraphicCtrlExt() throws IOException {
+    protected void writeGraphicCtrlExt(QuantizedFrame frame) throws IOException {
         out.write(0x21); // extension introducer
         out.write(0xf9); // GCE label
         out.write(4); // data block size
         int transp, disp;
-        if (transparent == null) {
+        if ((frame.transparent == null) && !frame.deltaTransparency) {
             transp = 0;
             disp = 0; // dispose = no action
         } else {
             transp = 1;
             disp = 2; // force clear if using transparent color
         }
-        if (dispose >= 0) {
-            disp = dispose & 7; // user override
+        if (frame.dispose >= 0) {
+            disp = frame.dispose & 7; // user override
         }
         disp <<= 2;
 
@@ -386,22 +646,22 @@ public class AnimatedGifEncoder {
         // 1:3 reserved // 4:6 disposal // 7   user input - 0 = none
         out.write(disp | transp); // 8   transparency flag
 
-        writeShort(delay); // delay x 1/100 sec
-        out.write(transIndex); // transparent color index
+        writeShort(frame.delay); // delay x 1/100 sec
+        out.write(frame.transIndex); // transparent color index
         out.write(0); // block terminator
     }
 
     /**
      * Writes Image Descriptor
      */
-    protected void writeImageDesc() throws IOException {
+    protected void writeImageDesc(QuantizedFrame frame) throws IOException {
         out.write(0x2c); // image separator
-        writeShort(0); // image position x,y = 0,0
-        writeShort(0);
-        writeShort(width); // image size
-        writeShort(height);
+        writeShort(frame.x); // image position x,y
+        writeShort(frame.y);
+        writeShort(frame.w); // image size
+        writeShort(frame.h);
         // packed fields
-        if (firstFrame) {
+        if (firstFrame || globalPalette) {
             // no LCT  - GCT is used for first (or only) frame
             out.write(0);
         } else {
@@ -456,8 +716,7 @@ public class AnimatedGifEncoder {
      * Encodes and writes pixel data
      */
     protected void writePixels() throws IOException {
-        LZWEncoder encoder = new LZWEncoder(width, height, indexedPixels, colorDepth);
-        encoder.encode(out);
+        lzw.encode(indexedPixels, colorDepth, out);
     }
 
     /**
@@ -476,4 +735,77 @@ public class AnimatedGifEncoder {
             out.write((byte) s.charAt(i));
         }
     }
+
+    /**
+     * A frame mapped to its palette, with the settings in effect
+     * when it was added.
+     */
+    protected static class QuantizedFrame {
+        final int delay;
+        final int dispose;
+        final Color transparent;
+        byte[] indexedPixels;
+        byte[] colorTab;
+        boolean[] usedEntry;
+        int transIndex;
+        boolean deltaTransparency; // unchanged pixels use transIndex
+        int x, y, w, h; // position and size in the logical screen
+
+        QuantizedFrame(int delay, int dispose, Color transparent) {
+            this.delay = delay;
+            this.dispose = dispose;
+            this.transparent = transparent;
+        }
+    }
+
+    /**
+     * A color table, with the quantizer mapping colors to it.
+     */
+    protected static class Palette {
+        /**
+         * Number of distinct colors of a frame whose index is
+         * remembered while mapping it.
+         */
+        static final int MAX_LOOKUP_COLORS = 1 << 16;
+        /**
+         * Nearest gray level by sum of color components.
+         */
+        static final byte[] GRAY_LEVELS = new byte[3 * 255 + 1];
+        static final Palette GRAYSCALE;
+
+        static {
+            byte[] tab = new byte[3 * 256];
+            for (int i = 0; i < 256; i++) {
+                tab[3 * i] = tab[3 * i + 1] = tab[3 * i + 2] = (byte) i;
+            }
+            for (int sum = 0; sum < GRAY_LEVELS.length; sum++) {
+                GRAY_LEVELS[sum] = (byte) ((sum + 1) / 3);
+            }
+            GRAYSCALE = new Palette(tab, null);
+        }
+
+        final byte[] colorTab; // RGB palette
+        final NeuQuant quantizer; // null for the gray levels
+
+        Palette(byte[] colorTab, NeuQuant quantizer) {
+            this.colorTab = colorTab;
+            this.quantizer = quantizer;
+        }
+
+        /**
+         * Quantizes BGR pixels to a palette of up to 256 colors.
+         */
+        static Palette quantize(byte[] pixels, int sample) {
+            NeuQuant nq = new NeuQuant(pixels, pixels.length, sample);
+            // initialize quantizer
+            byte[] tab = nq.process(); // create reduced palette
+            // convert map from BGR to RGB
+            for (int i = 0; i < tab.length; i += 3) {
+                byte temp = tab[i];
+                tab[i] = tab[i + 2];
+                tab[i + 2] = temp;
+            }
+            return new Palette(tab, nq);
+        }
+    }
 }
\ No newline at end of file
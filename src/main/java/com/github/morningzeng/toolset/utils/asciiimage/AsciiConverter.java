@@ -5,7 +5,8 @@ import lombok.Setter;
 
 import java.awt.Dimension;
 import java.awt.image.BufferedImage;
-import java.util.Map.Entry;
+import java.util.concurrent.CancellationException;
+import java.util.stream.IntStream;
 
 /**
  * A class used to convert an image to an ascii art. Output and conversion
@@ -43,6 +44,97 @@ public abstract class AsciiConverter<Output> {
     @Getter
     protected BestCharacterFitStrategy characterFitStrategy;
 
+    /**
+     * Whether tile rows are matched concurrently on the fork-join common pool.
+     * Implementations of {@link #addCharacterToOutput} must tolerate concurrent
+     * calls for distinct tiles when this is enabled.
+     * <p>
+     * -- GETTER --
+     * <p>
+     * Whether parallel conversion is enabled.
+     * <p>
+     * -- SETTER --
+     * <p>
+     * Enables or disables parallel conversion.
+     */
+    @Setter
+    @Getter
+    protected boolean parallel;
+
+    /**
+     * Number of candidate characters preselected for each tile through the
+     * {@link GlyphFeatureIndex} of the character cache before running the fit
+     * strategy. Zero, the default, compares each tile with every character.
+     * Preselection pays off with large character sets, at the price of
+     * occasionally missing the best fit.
+     * <p>
+     * -- GETTER --
+     * <p>
+     * Gets the number of candidate characters per tile.
+     * <p>
+     * -- SETTER --
+     * <p>
+     * Sets the number of candidate characters per tile, zero to disable.
+     */
+    @Setter
+    @Getter
+    protected int candidateCount;
+
+    /**
+     * Cache of the best fitting character of recently seen tiles, shared by
+     * identical and near-identical tiles. Null, the default, disables it. The
+     * cache may be kept across conversions; its hit and miss counters help
+     * tuning its size.
+     * <p>
+     * -- GETTER --
+     * <p>
+     * Gets the tile match cache.
+     * <p>
+     * -- SETTER --
+     * <p>
+     * Sets the tile match cache, null to disable.
+     */
+    @Setter
+    @Getter
+    protected TileMatchCache tileMatchCache;
+
+    /**
+     * Whether the image is converted in horizontal bands one tile row high, so
+     * memory use does not grow with the image height beyond the output itself.
+     * Each band is read, matched and handed to {@link #finalizeBand} before
+     * the next one is read. Bands are converted on the calling thread, so
+     * {@link #parallel} does not apply.
+     * <p>
+     * -- GETTER --
+     * <p>
+     * Whether streaming conversion is enabled.
+     * <p>
+     * -- SETTER --
+     * <p>
+     * Enables or disables streaming conversion.
+     */
+    @Setter
+    @Getter
+    protected boolean streaming;
+
+    /**
+     * Whether the running conversion should stop. It is checked before each
+     * tile row, from any thread, and makes {@link #convertImage} throw a
+     * {@link CancellationException}. The flag is not cleared by the converter
+     * and must be reset before converting again.
+     * <p>
+     * -- GETTER --
+     * <p>
+     * Whether the conversion is cancelled.
+     * <p>
+     * -- SETTER --
+     * <p>
+     * Cancels the conversion, or clears the cancellation.
+     */
+    @Setter
+    @Getter
+    protected volatile boolean cancelled;
+
     /**
      * The output.
      */
@@ -61,15 +153,19 @@ public abstract class AsciiConverter<Output> {
 
     /**
      * Override this to insert the character at a specified position in the
-     * output.
+     * output. When {@link #parallel} is enabled this is called concurrently,
+     * each call targeting a different tile.
      *
-     * @param characterEntry    character choosen as best fit
-     * @param sourceImagePixels source image pixels. Can be
+     * @param glyphIndex        index in the character cache of the character
+     *                          choosen as best fit
+     * @param sourceImagePixels source image pixels, only the band of the
+     *                          current tile row in {@link #streaming} mode, see
+     *                          {@link #pixelIndexOf(int, int, int)}. Can be
      * @param tileX             the tile x
      * @param tileY             the tile y
      * @param imageWidth        the image width
      */
-    protected abstract void addCharacterToOutput(final Entry<Character, GrayscaleMatrix> characterEntry,
+    protected abstract void addCharacterToOutput(final int glyphIndex,
                                                  final int[] sourceImagePixels, final int tileX, final int tileY, final int imageWidth);
 
     /**
@@ -77,6 +173,8 @@ public abstract class AsciiConverter<Output> {
      *
      * @param source the source
      * @return the buffered image
+     * @throws CancellationException if {@link #cancelled} is set before the
+     *                               last tile row is converted
      */
     public Output convertImage(final BufferedImage source) {
         // dimension of each tile
@@ -86,52 +184,235 @@ public abstract class AsciiConverter<Output> {
         int outputImageWidth = (source.getWidth() / tileSize.width) * tileSize.width;
         int outputImageHeight = (source.getHeight() / tileSize.height) * tileSize.height;
 
-        // extract pixels from source image
-        int[] imagePixels = source.getRGB(0, 0, outputImageWidth, outputImageHeight, null, 0, outputImageWidth);
+        output = initializeOutput(outputImageWidth, outputImageHeight);
+
+        if (tileMatchCache != null) {
+            tileMatchCache.retainFor(characterCache, characterFitStrategy, candidateCount);
+        }
+
+        if (streaming) {
+            convertBands(source, outputImageWidth, outputImageHeight);
+            finalizeOutput(null, outputImageWidth, outputImageHeight);
+            return output;
+        }
+
+        // process the source pixels to a grayscale matrix
+        GrayscaleMatrix sourceMatrix = GrayscaleMatrix.fromImage(source, 0, 0, outputImageWidth, outputImageHeight);
 
-        // process the pixels to a grayscale matrix
-        GrayscaleMatrix sourceMatrix = new GrayscaleMatrix(imagePixels, outputImageWidth, outputImageHeight);
+        // every pixel is overwritten by the characters
+        int[] imagePixels = new int[outputImageWidth * outputImageHeight];
 
         // divide matrix into tiles for easy processing
         TiledGrayscaleMatrix tiledMatrix = new TiledGrayscaleMatrix(sourceMatrix, tileSize.width, tileSize.height);
 
-        output = initializeOutput(outputImageWidth, outputImageHeight);
-
         // compare each tile to every character to determine best fit
-        for (int i = 0; i < tiledMatrix.getTileCount(); i++) {
+        IntStream tileRows = IntStream.range(0, tiledMatrix.getTilesY());
+        if (parallel) {
+            tileRows = tileRows.parallel();
+        }
+        tileRows.forEach(tileY -> {
+            checkCancelled();
+            convertTileRow(tiledMatrix, tileY, tileY, imagePixels, outputImageWidth);
+        });
 
-            GrayscaleMatrix tile = tiledMatrix.getTile(i);
+        finalizeOutput(imagePixels, outputImageWidth, outputImageHeight);
+        return output;
+    }
 
-            float minError = Float.MAX_VALUE;
-            Entry<Character, GrayscaleMatrix> bestFit = null;
+    /**
+     * Converts the image one band of a tile row at a time, reusing the same
+     * band buffers for every row. Bands are read straight from the image
+     * raster where its layout allows it.
+     *
+     * @param source      the source image
+     * @param imageWidth  the rounded image width
+     * @param imageHeight the rounded image height
+     */
+    private void convertBands(final BufferedImage source, final int imageWidth, final int imageHeight) {
+        Dimension tileSize = characterCache.getCharacterImageSize();
 
-            for (Entry<Character, GrayscaleMatrix> charImage : characterCache) {
-                GrayscaleMatrix charPixels = charImage.getValue();
+        int[] bandPixels = new int[imageWidth * tileSize.height];
+        GrayscaleMatrix bandMatrix = new GrayscaleMatrix(imageWidth, tileSize.height);
+        TiledGrayscaleMatrix tiledBand = new TiledGrayscaleMatrix(bandMatrix, tileSize.width, tileSize.height);
 
-                float error = characterFitStrategy.calculateError(charPixels, tile);
+        for (int tileY = 0; tileY < imageHeight / tileSize.height; tileY++) {
+            checkCancelled();
+            bandMatrix.setPixels(source, 0, tileY * tileSize.height);
 
-                if (error < minError) {
-                    minError = error;
-                    bestFit = charImage;
-                }
+            convertTileRow(tiledBand, 0, tileY, bandPixels, imageWidth);
+            finalizeBand(bandPixels, tileY, imageWidth, tileSize.height);
+        }
+    }
+
+    /**
+     * Stops the conversion if it has been cancelled.
+     *
+     * @throws CancellationException if {@link #cancelled} is set
+     */
+    private void checkCancelled() {
+        if (cancelled) {
+            throw new CancellationException("Ascii conversion cancelled");
+        }
+    }
+
+    /**
+     * Finds the best fitting character for each tile of a row and copies it to
+     * the output.
+     *
+     * @param tiledMatrix the tiled source matrix
+     * @param matrixTileY the tile row in the tiled matrix
+     * @param tileY       the tile row in the output
+     * @param imagePixels source image pixels
+     * @param imageWidth  the image width
+     */
+    private void convertTileRow(final TiledGrayscaleMatrix tiledMatrix, final int matrixTileY, final int tileY,
+                                final int[] imagePixels, final int imageWidth) {
+        boolean preselect = candidateCount > 0 && candidateCount < characterCache.getGlyphCount();
+        CandidateBuffer candidates = preselect ? new CandidateBuffer(candidateCount) : null;
+
+        for (int tileX = 0; tileX < tiledMatrix.getTilesX(); tileX++) {
+            GrayscaleMatrix tile = tiledMatrix.getTile(ArrayUtils.convert2DTo1D(tileX, matrixTileY, tiledMatrix.getTilesX()));
+
+            long signature = 0;
+            int bestFit = TileMatchCache.MISSING;
+            if (tileMatchCache != null) {
+                signature = tileMatchCache.signature(tile);
+                bestFit = tileMatchCache.get(signature);
             }
 
-            int tileX = ArrayUtils.convert1DtoX(i, tiledMatrix.getTilesX());
-            int tileY = ArrayUtils.convert1DtoY(i, tiledMatrix.getTilesX());
+            if (bestFit == TileMatchCache.MISSING) {
+                bestFit = preselect ? findBestCandidate(tile, candidates) : findBestFit(tile);
+                if (tileMatchCache != null) {
+                    tileMatchCache.put(signature, bestFit);
+                }
+            }
 
             // copy character to output
-            addCharacterToOutput(bestFit, imagePixels, tileX, tileY, outputImageWidth);
+            addCharacterToOutput(bestFit, imagePixels, tileX, tileY, imageWidth);
         }
+    }
 
-        finalizeOutput(imagePixels, outputImageWidth, outputImageHeight);
-        return output;
+    /**
+     * Finds the character that fits a tile best.
+     * <p>
+     * Characters are tried outwards from the one closest to the tile in mean
+     * intensity, as those usually fit best. The best error so far bounds the
+     * error calculation of the next characters, and the search stops once the
+     * fit strategy rules out every remaining character from the distance of
+     * its mean intensity alone.
+     *
+     * @param tile the tile
+     * @return index of the best fitting glyph in the character cache
+     */
+    private int findBestFit(final GrayscaleMatrix tile) {
+        float tileMean = tile.mean();
+        int glyphCount = characterCache.getGlyphCount();
+        int above = characterCache.findGlyphByMean(tileMean);
+        int below = above - 1;
+
+        float minError = Float.MAX_VALUE;
+        int bestFit = 0;
+
+        while (below >= 0 || above < glyphCount) {
+            int glyph;
+            if (above >= glyphCount || (below >= 0
+                    && tileMean - characterCache.getGlyphMean(below) <= characterCache.getGlyphMean(above) - tileMean)) {
+                glyph = below--;
+            } else {
+                glyph = above++;
+            }
+
+            // the glyph with the closest mean is ruled out, so are all others
+            if (characterFitStrategy.lowerBound(characterCache.getGlyphMean(glyph), tileMean) >= minError) {
+                break;
+            }
+
+            float error = characterFitStrategy.calculateError(characterCache.getGlyph(glyph), tile, minError);
+
+            if (error < minError) {
+                minError = error;
+                bestFit = glyph;
+            }
+        }
+
+        return bestFit;
+    }
+
+    /**
+     * Finds the character that fits a tile best among the candidates nearest
+     * to it in the feature index.
+     *
+     * @param tile       the tile
+     * @param candidates scratch space for the candidates
+     * @return index of the best fitting candidate glyph in the character cache
+     */
+    private int findBestCandidate(final GrayscaleMatrix tile, final CandidateBuffer candidates) {
+        GlyphFeatureIndex.extractFeatures(tile, candidates.features);
+        int found = characterCache.getFeatureIndex().findNearest(candidates.features, candidates.glyphs, candidates.distances);
+
+        float minError = Float.MAX_VALUE;
+        int bestFit = 0;
+        for (int i = 0; i < found; i++) {
+            int glyph = candidates.glyphs[i];
+            float error = characterFitStrategy.calculateError(characterCache.getGlyph(glyph), tile, minError);
+
+            if (error < minError) {
+                minError = error;
+                bestFit = glyph;
+            }
+        }
+        return bestFit;
+    }
+
+    /**
+     * Per-row scratch space of the candidate preselection.
+     */
+    private static final class CandidateBuffer {
+        private final float[] features = new float[GlyphFeatureIndex.DIMENSIONS];
+        private final int[] glyphs;
+        private final float[] distances;
+
+        private CandidateBuffer(final int candidateCount) {
+            glyphs = new int[candidateCount];
+            distances = new float[candidateCount];
+        }
+    }
+
+    /**
+     * Gets the index of the first pixel of a tile in the pixel buffer passed to
+     * {@link #addCharacterToOutput}. In {@link #streaming} mode that buffer
+     * only holds the band of the current tile row.
+     *
+     * @param tileX      the tile x
+     * @param tileY      the tile y
+     * @param imageWidth the image width
+     * @return the pixel index
+     */
+    protected int pixelIndexOf(final int tileX, final int tileY, final int imageWidth) {
+        Dimension tileSize = characterCache.getCharacterImageSize();
+        int bufferTileY = streaming ? 0 : tileY;
+        return ArrayUtils.convert2DTo1D(tileX * tileSize.width, bufferTileY * tileSize.height, imageWidth);
+    }
+
+    /**
+     * Override this to flush a band of the output in {@link #streaming} mode,
+     * once every character of its tile row has been added. The band pixels are
+     * reused for the next band afterwards.
+     *
+     * @param bandPixels  pixels of the band
+     * @param tileY       the tile row of the band
+     * @param imageWidth  the image width
+     * @param bandHeight  the band height
+     */
+    protected void finalizeBand(final int[] bandPixels, final int tileY, final int imageWidth, final int bandHeight) {
     }
 
     /**
      * Override this if any action needs to be done at the end of the
      * conversion.
      *
-     * @param sourceImagePixels source image pixels data. Can be
+     * @param sourceImagePixels source image pixels data, null in
+     *                          {@link #streaming} mode. Can be
      * @param imageWidth        source image width
      * @param imageHeight       source image height
      */
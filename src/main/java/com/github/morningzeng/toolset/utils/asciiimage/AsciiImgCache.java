@@ -1,10 +1,11 @@
 package com.github.morningzeng.toolset.utils.asciiimage;
 
-import com.intellij.ui.JBColor;
 import com.intellij.util.ui.ImageUtil;
 import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
 import org.jetbrains.annotations.NotNull;
 
+import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Font;
 import java.awt.FontMetrics;
@@ -14,15 +15,38 @@ import java.awt.Rectangle;
 import java.awt.RenderingHints;
 import java.awt.font.TextLayout;
 import java.awt.image.BufferedImage;
-import java.util.HashMap;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.Iterator;
-import java.util.Map;
 import java.util.Map.Entry;
+import java.util.stream.IntStream;
 
 /**
- * Character cache that keeps a map of precalculated pixel data of each
- * character that is eligible for ascii art.
+ * Character cache that keeps precalculated pixel data of each character that
+ * is eligible for ascii art.
+ * <p>
+ * Glyph bitmaps are packed back to back into a single float array, glyph
+ * {@code i} belonging to {@code characters[i]}. Matching loops should scan
+ * glyphs by index ({@link #getGlyphCount()}, {@link #getGlyph(int)},
+ * {@link #getCharacter(int)}) rather than through the boxed iterator.
+ * <p>
+ * Glyphs are ordered by ascending mean intensity, so the glyphs most likely
+ * to fit a tile can be found with {@link #findGlyphByMean(float)} and tried
+ * first.
+ * <p>
+ * Rendering the glyphs is relatively slow, so a cache can be stored to and
+ * loaded from a file, see {@link #create(Font, char[], Path)}.
  */
+@Slf4j
 public class AsciiImgCache implements Iterable<Entry<Character, GrayscaleMatrix>> {
 
     /**
@@ -30,9 +54,62 @@ public class AsciiImgCache implements Iterable<Entry<Character, GrayscaleMatrix>
      */
     private static final char[] defaultCharacters = "$@B%8&WM#*oahkbdpqwmZO0QLCJUYXzcvunxrjft/\\|()1{}[]?-_+~<>i!lI;:,\"^`'. ".toCharArray();
     /**
-     * A map of characters to their bitmaps.
+     * Leading bytes of a stored cache file, "AIMG".
      */
-    protected final Map<Character, GrayscaleMatrix> imageCache;
+    private static final int FILE_MAGIC = 0x41494D47;
+    /**
+     * Version of the stored cache file layout. Bump it whenever the layout or
+     * the glyph rendering changes, so stale files are rendered again.
+     */
+    private static final int FILE_VERSION = 3;
+    /**
+     * Largest cache file loaded, far above any real character set. Larger
+     * files are treated as corrupt.
+     */
+    private static final int MAX_FILE_SIZE = 64 << 20;
+    /**
+     * The cached characters, in glyph order.
+     */
+    private final char[] characters;
+    /**
+     * All glyph bitmaps packed into one contiguous array, one glyph after the
+     * other.
+     * <p>
+     * -- GETTER --
+     * <p>
+     * Gets a reference to the packed glyph data.
+     */
+    @Getter
+    private final float[] glyphData;
+    /**
+     * The glyph bitmaps prerendered as opaque ARGB pixels, laid out like
+     * {@link #glyphData}.
+     * <p>
+     * -- GETTER --
+     * <p>
+     * Gets a reference to the packed ARGB glyph pixels. A glyph starts at the
+     * offset of its {@link #getGlyph(int) bitmap}.
+     */
+    @Getter
+    private final int[] glyphArgb;
+    /**
+     * Views of each glyph bitmap into {@link #glyphData}.
+     */
+    private final GrayscaleMatrix[] glyphs;
+    /**
+     * Mean intensity of each glyph, in ascending order.
+     */
+    private final float[] glyphMeans;
+    /**
+     * Feature index of the glyphs, for narrowing a tile down to a few
+     * candidate glyphs.
+     * <p>
+     * -- GETTER --
+     * <p>
+     * Gets the glyph feature index.
+     */
+    @Getter
+    private final GlyphFeatureIndex featureIndex;
     /**
      * Dimension of character image data.
      * <p>
@@ -46,14 +123,201 @@ public class AsciiImgCache implements Iterable<Entry<Character, GrayscaleMatrix>
     private final Dimension characterImageSize;
 
     /**
-     * Instantiates a new ascii img cache.
+     * Instantiates a new ascii img cache. Glyphs are reordered by mean
+     * intensity.
      *
      * @param characterImageSize the character image size
-     * @param imageCache         the image cache
+     * @param characters         the cached characters
+     * @param glyphData          the packed glyph bitmaps, in character order
      */
-    private AsciiImgCache(final Dimension characterImageSize, final Map<Character, GrayscaleMatrix> imageCache) {
+    private AsciiImgCache(final Dimension characterImageSize, final char[] characters, final float[] glyphData) {
         this.characterImageSize = characterImageSize;
-        this.imageCache = imageCache;
+        this.characters = new char[characters.length];
+        this.glyphData = new float[glyphData.length];
+        this.glyphArgb = new int[glyphData.length];
+        this.glyphs = new GrayscaleMatrix[characters.length];
+        this.glyphMeans = new float[characters.length];
+
+        GrayscaleMatrix[] unsorted = createGlyphViews(characterImageSize, characters.length, glyphData);
+        float[] means = new float[characters.length];
+        for (int i = 0; i < characters.length; i++) {
+            means[i] = unsorted[i].mean();
+        }
+
+        int[] order = IntStream.range(0, characters.length).boxed()
+                .sorted(Comparator.comparingDouble(i -> means[i]))
+                .mapToInt(Integer::intValue)
+                .toArray();
+        int glyphSize = characterImageSize.width * characterImageSize.height;
+        for (int i = 0; i < order.length; i++) {
+            this.characters[i] = characters[order[i]];
+            this.glyphMeans[i] = means[order[i]];
+            System.arraycopy(glyphData, glyphSize * order[i], this.glyphData, glyphSize * i, glyphSize);
+        }
+
+        for (int i = 0; i < this.glyphData.length; i++) {
+            int component = (int) this.glyphData[i];
+            this.glyphArgb[i] = 0xFF000000 | component << 16 | component << 8 | component;
+        }
+
+        System.arraycopy(createGlyphViews(characterImageSize, characters.length, this.glyphData), 0,
+                glyphs, 0, characters.length);
+        this.featureIndex = new GlyphFeatureIndex(glyphs);
+    }
+
+    /**
+     * Describes the font properties that affect glyph rendering.
+     *
+     * @param font the font
+     * @return the font key
+     */
+    private static String fontKey(final Font font) {
+        return font.getFamily() + "-" + font.getStyle() + "-" + font.getSize2D();
+    }
+
+    /**
+     * Names the cache file of a font and character set.
+     *
+     * @param fontKey    the font key
+     * @param characters the characters
+     * @return the file name
+     */
+    private static String cacheFileName(final String fontKey, final char[] characters) {
+        char[] sortedCharacters = characters.clone();
+        Arrays.sort(sortedCharacters);
+        return String.format("%s-%08x.glyphs", fontKey.replaceAll("[^A-Za-z0-9.-]", "_"),
+                Arrays.hashCode(sortedCharacters));
+    }
+
+    /**
+     * Loads a cache from a file written by {@link #store(Path, String)}. The
+     * file is read at once and closed, not mapped, so it is never left locked.
+     * Every stored length is checked against the bytes left before allocating.
+     *
+     * @param file       the cache file
+     * @param fontKey    the expected font key
+     * @param characters the expected characters, in any order
+     * @return the ascii img cache
+     * @throws IOException if the file cannot be read, is corrupt or does not match
+     */
+    private static AsciiImgCache load(final Path file, final String fontKey, final char[] characters) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > MAX_FILE_SIZE) {
+                throw new IOException("Ascii image cache too large: " + size);
+            }
+            buffer = ByteBuffer.allocate((int) size);
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // read until the end of the file
+            }
+            buffer.flip();
+        }
+
+        if (buffer.remaining() < 2 * Integer.BYTES || buffer.getInt() != FILE_MAGIC || buffer.getInt() != FILE_VERSION) {
+            throw new IOException("Not an ascii image cache of version " + FILE_VERSION);
+        }
+
+        byte[] storedFontKey = new byte[readLength(buffer, Byte.BYTES)];
+        buffer.get(storedFontKey);
+        Dimension characterImageSize = new Dimension(readLength(buffer, 0), readLength(buffer, 0));
+        char[] storedCharacters = new char[readLength(buffer, Character.BYTES)];
+        buffer.asCharBuffer().get(storedCharacters);
+        buffer.position(buffer.position() + storedCharacters.length * Character.BYTES);
+
+        char[] expectedCharacters = characters.clone();
+        char[] actualCharacters = storedCharacters.clone();
+        Arrays.sort(expectedCharacters);
+        Arrays.sort(actualCharacters);
+        if (!fontKey.equals(new String(storedFontKey, StandardCharsets.UTF_8))
+                || !Arrays.equals(expectedCharacters, actualCharacters)) {
+            throw new IOException("Ascii image cache belongs to another font or character set");
+        }
+
+        long glyphDataLength = (long) characterImageSize.width * characterImageSize.height * storedCharacters.length;
+        if (glyphDataLength == 0 || glyphDataLength * Float.BYTES != buffer.remaining()) {
+            throw new IOException("Corrupt ascii image cache: glyph data size mismatch");
+        }
+        float[] glyphData = new float[(int) glyphDataLength];
+        buffer.asFloatBuffer().get(glyphData);
+        return new AsciiImgCache(characterImageSize, storedCharacters, glyphData);
+    }
+
+    /**
+     * Reads a stored length or size, checking that it is not negative and that
+     * as many elements fit in the rest of the buffer.
+     *
+     * @param buffer       the buffer
+     * @param elementBytes size of each element in bytes, 0 for a plain size
+     * @return the length
+     * @throws IOException if the buffer is truncated or the length invalid
+     */
+    private static int readLength(final ByteBuffer buffer, final int elementBytes) throws IOException {
+        if (buffer.remaining() < Integer.BYTES) {
+            throw new IOException("Truncated ascii image cache");
+        }
+        int length = buffer.getInt();
+        if (length < 0 || (long) length * elementBytes > buffer.remaining()) {
+            throw new IOException("Corrupt ascii image cache: invalid length " + length);
+        }
+        return length;
+    }
+
+    /**
+     * Stores the cache to a file. The file is written next to its target and
+     * then moved in place, so readers never see it half written.
+     *
+     * @param file    the cache file
+     * @param fontKey the font key
+     * @throws IOException if the file cannot be written
+     */
+    private void store(final Path file, final String fontKey) throws IOException {
+        byte[] fontKeyBytes = fontKey.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocate(6 * Integer.BYTES + fontKeyBytes.length
+                + characters.length * Character.BYTES + glyphData.length * Float.BYTES);
+
+        buffer.putInt(FILE_MAGIC).putInt(FILE_VERSION)
+                .putInt(fontKeyBytes.length).put(fontKeyBytes)
+                .putInt(characterImageSize.width).putInt(characterImageSize.height)
+                .putInt(characters.length);
+        buffer.asCharBuffer().put(characters);
+        buffer.position(buffer.position() + characters.length * Character.BYTES);
+        buffer.asFloatBuffer().put(glyphData);
+        buffer.rewind();
+
+        Files.createDirectories(file.getParent());
+        Path temporary = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Creates a view of each glyph in packed glyph data.
+     *
+     * @param characterImageSize the character image size
+     * @param glyphCount         the number of glyphs
+     * @param glyphData          the packed glyph bitmaps
+     * @return the glyph views
+     */
+    private static GrayscaleMatrix[] createGlyphViews(final Dimension characterImageSize, final int glyphCount,
+                                                      final float[] glyphData) {
+        GrayscaleMatrix packed = GrayscaleMatrix.createView(glyphData, characterImageSize.width,
+                characterImageSize.height * glyphCount);
+
+        GrayscaleMatrix[] views = new GrayscaleMatrix[glyphCount];
+        for (int i = 0; i < glyphCount; i++) {
+            views[i] = GrayscaleMatrix.createView(packed, characterImageSize.width,
+                    characterImageSize.height, 0, characterImageSize.height * i);
+        }
+        return views;
     }
 
     /**
@@ -100,6 +364,54 @@ public class AsciiImgCache implements Iterable<Entry<Character, GrayscaleMatrix>
         return create(font, defaultCharacters);
     }
 
+    /**
+     * Creates the cache with supplied font, loading it from a cache directory
+     * when possible.
+     *
+     * @param font           the font
+     * @param cacheDirectory directory of the stored caches
+     * @return the ascii img cache
+     * @see #create(Font, char[], Path)
+     */
+    public static AsciiImgCache create(final Font font, final Path cacheDirectory) {
+        return create(font, defaultCharacters, cacheDirectory);
+    }
+
+    /**
+     * Initialize a new character cache with supplied font, loading it from a
+     * cache directory when possible.
+     * <p>
+     * Each font family, style, size and character set has its own file in the
+     * directory. If it is missing or unreadable, the glyphs are rendered and
+     * the file is written for the next time. Failing to write it only logs a
+     * warning.
+     *
+     * @param font           the font
+     * @param characters     the characters
+     * @param cacheDirectory directory of the stored caches
+     * @return the ascii img cache
+     */
+    public static AsciiImgCache create(final Font font, final char[] characters, final Path cacheDirectory) {
+        String fontKey = fontKey(font);
+        Path file = cacheDirectory.resolve(cacheFileName(fontKey, characters));
+
+        if (Files.isRegularFile(file)) {
+            try {
+                return load(file, fontKey, characters);
+            } catch (IOException | RuntimeException e) {
+                log.warn("Ignoring unreadable ascii image cache {}", file, e);
+            }
+        }
+
+        AsciiImgCache cache = create(font, characters);
+        try {
+            cache.store(file, fontKey);
+        } catch (IOException e) {
+            log.warn("Failed to store ascii image cache {}", file, e);
+        }
+        return cache;
+    }
+
     /**
      * Initialize a new character cache with supplied font.
      *
@@ -109,9 +421,9 @@ public class AsciiImgCache implements Iterable<Entry<Character, GrayscaleMatrix>
     public static AsciiImgCache create(final Font font, final char[] characters) {
 
         Dimension maxCharacterImageSize = calculateCharacterRectangle(font, characters);
-        Map<Character, GrayscaleMatrix> imageCache = createCharacterImages(font, maxCharacterImageSize, characters);
+        float[] glyphData = createCharacterImages(font, maxCharacterImageSize, characters);
 
-        return new AsciiImgCache(maxCharacterImageSize, imageCache);
+        return new AsciiImgCache(maxCharacterImageSize, characters.clone(), glyphData);
 
     }
 
@@ -120,9 +432,9 @@ public class AsciiImgCache implements Iterable<Entry<Character, GrayscaleMatrix>
      *
      * @param font          the font
      * @param characterSize the character size
-     * @return the map
+     * @return the packed glyph bitmaps, in character order
      */
-    private static Map<Character, GrayscaleMatrix> createCharacterImages(final Font font, final Dimension characterSize, final char[] characters) {
+    private static float[] createCharacterImages(final Font font, final Dimension characterSize, final char[] characters) {
         // create each image
         BufferedImage img = ImageUtil.createImage(characterSize.width, characterSize.height, BufferedImage.TYPE_INT_ARGB);
         Graphics g = img.getGraphics();
@@ -132,33 +444,100 @@ public class AsciiImgCache implements Iterable<Entry<Character, GrayscaleMatrix>
         graphics.setFont(font);
         FontMetrics fm = graphics.getFontMetrics();
 
-        Map<Character, GrayscaleMatrix> imageCache = new HashMap<>();
+        int glyphSize = characterSize.width * characterSize.height;
+        float[] glyphData = new float[glyphSize * characters.length];
 
-        for (char c : characters) {
-            String character = Character.toString(c);
+        for (int i = 0; i < characters.length; i++) {
+            String character = Character.toString(characters[i]);
 
-            g.setColor(JBColor.WHITE);
+            // plain colors, a themed color would tie the stored glyphs to the IDE theme
+            g.setColor(Color.WHITE);
             g.fillRect(0, 0, characterSize.width, characterSize.height);
-            g.setColor(JBColor.BLACK);
+            g.setColor(Color.BLACK);
 
             Rectangle rect = new TextLayout(character, fm.getFont(), fm.getFontRenderContext()).getOutline(null).getBounds();
 
             g.drawString(character, 0, (int) (rect.getHeight() - rect.getMaxY()));
 
-            int[] pixels = img.getRGB(0, 0, characterSize.width, characterSize.height, null, 0, characterSize.width);
-            GrayscaleMatrix matrix = new GrayscaleMatrix(pixels, characterSize.width, characterSize.height);
-            imageCache.put(c, matrix);
+            GrayscaleMatrix matrix = GrayscaleMatrix.fromImage(img, 0, 0, characterSize.width, characterSize.height);
+            System.arraycopy(matrix.getData(), 0, glyphData, glyphSize * i, glyphSize);
         }
 
-        return imageCache;
+        return glyphData;
+    }
+
+    /**
+     * Gets the number of cached glyphs.
+     *
+     * @return the glyph count
+     */
+    public int getGlyphCount() {
+        return characters.length;
     }
 
     /**
+     * Gets the character of a glyph.
+     *
+     * @param index glyph index
+     * @return the character
+     */
+    public char getCharacter(final int index) {
+        return characters[index];
+    }
+
+    /**
+     * Gets the bitmap of a glyph. The returned matrix is a view into
+     * {@link #getGlyphData()}.
+     *
+     * @param index glyph index
+     * @return the glyph bitmap
+     */
+    public GrayscaleMatrix getGlyph(final int index) {
+        return glyphs[index];
+    }
+
+    /**
+     * Gets the mean intensity of a glyph. Means ascend with the glyph index.
+     *
+     * @param index glyph index
+     * @return the mean intensity
+     */
+    public float getGlyphMean(final int index) {
+        return glyphMeans[index];
+    }
+
+    /**
+     * Finds the first glyph whose mean intensity is not less than the given
+     * one. Together with the glyph before it, it is the glyph closest in
+     * mean intensity.
+     *
+     * @param mean the mean intensity
+     * @return the glyph index, {@link #getGlyphCount()} if every glyph is darker
+     */
+    public int findGlyphByMean(final float mean) {
+        int index = Arrays.binarySearch(glyphMeans, mean);
+        if (index < 0) {
+            return -index - 1;
+        }
+
+        // step back over glyphs sharing the same mean
+        while (index > 0 && glyphMeans[index - 1] == mean) {
+            index--;
+        }
+        return index;
+    }
+
+    /**
+     * Iterates the glyphs in index order. Prefer the indexed accessors in hot
+     * loops, this boxes every character.
+     *
      * @see Iterable#iterator()
      */
     @Override
     public @NotNull Iterator<Entry<Character, GrayscaleMatrix>> iterator() {
-        return imageCache.entrySet().iterator();
+        return IntStream.range(0, characters.length)
+                .<Entry<Character, GrayscaleMatrix>>mapToObj(i -> new SimpleImmutableEntry<>(characters[i], glyphs[i]))
+                .iterator();
     }
 
 }
\ No newline at end of file
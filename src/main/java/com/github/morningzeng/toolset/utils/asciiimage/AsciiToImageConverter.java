@@ -1,11 +1,9 @@
 package com.github.morningzeng.toolset.utils.asciiimage;
 
-import com.intellij.ui.JBColor;
 import com.intellij.util.ui.ImageUtil;
 
-import java.awt.Color;
+import java.awt.Dimension;
 import java.awt.image.BufferedImage;
-import java.util.Map.Entry;
 
 /**
  * Converts ascii art to a BufferedImage.
@@ -23,37 +21,49 @@ public class AsciiToImageConverter extends AsciiConverter<BufferedImage> {
     }
 
     /**
-     * Copy image data over the source pixels image.
+     * Copy the prerendered ARGB rows of the glyph over the source pixels image.
+     * Each tile covers a distinct pixel region, so concurrent calls for
+     * different tiles do not interfere.
      *
-     * @see AsciiConverter#addCharacterToOutput(Entry, int[], int, int, int)
+     * @see AsciiConverter#addCharacterToOutput(int, int[], int, int, int)
      */
     @Override
-    public void addCharacterToOutput(final Entry<Character, GrayscaleMatrix> characterEntry,
+    public void addCharacterToOutput(final int glyphIndex,
                                      final int[] sourceImagePixels, final int tileX, final int tileY, final int imageWidth) {
-        int startCoordinateX = tileX * characterCache.getCharacterImageSize().width;
-        int startCoordinateY = tileY * characterCache.getCharacterImageSize().height;
+        Dimension characterSize = characterCache.getCharacterImageSize();
+        int[] glyphArgb = characterCache.getGlyphArgb();
+        int glyphOffset = characterCache.getGlyph(glyphIndex).getOffset();
+        int startIndex = pixelIndexOf(tileX, tileY, imageWidth);
 
-        // copy winner character
-        for (int i = 0; i < characterEntry.getValue().getData().length; i++) {
-            int xOffset = i % characterCache.getCharacterImageSize().width;
-            int yOffset = i / characterCache.getCharacterImageSize().width;
-
-            int component = (int) characterEntry.getValue().getData()[i];
-            final int idx = ArrayUtils.convert2DTo1D(startCoordinateX
-                    + xOffset, startCoordinateY + yOffset, imageWidth);
-            sourceImagePixels[idx] = new JBColor(new Color(component, component, component), new Color(component, component, component)).getRGB();
+        // copy winner character row by row
+        for (int row = 0; row < characterSize.height; row++) {
+            System.arraycopy(glyphArgb, glyphOffset + row * characterSize.width,
+                    sourceImagePixels, startIndex + row * imageWidth, characterSize.width);
         }
 
     }
 
     /**
-     * Write pixels to output image.
+     * Write band pixels to output image.
+     *
+     * @see AsciiConverter#finalizeBand(int[], int, int, int)
+     */
+    @Override
+    protected void finalizeBand(final int[] bandPixels, final int tileY, final int imageWidth, final int bandHeight) {
+        output.setRGB(0, tileY * bandHeight, imageWidth, bandHeight, bandPixels, 0, imageWidth);
+    }
+
+    /**
+     * Write pixels to output image, unless they were already written band by
+     * band.
      *
      * @see AsciiConverter#finalizeOutput(int[], int, int)
      */
     @Override
     protected void finalizeOutput(final int[] sourceImagePixels, final int imageWidth, final int imageHeight) {
-        output.setRGB(0, 0, imageWidth, imageHeight, sourceImagePixels, 0, imageWidth);
+        if (sourceImagePixels != null) {
+            output.setRGB(0, 0, imageWidth, imageHeight, sourceImagePixels, 0, imageWidth);
+        }
 
     }
 
@@ -1,7 +1,5 @@
 package com.github.morningzeng.toolset.utils.asciiimage;
 
-import java.util.Map.Entry;
-
 /**
  * Converts ascii art to String.
  */
@@ -18,20 +16,21 @@ public class AsciiToStringConverter extends AsciiConverter<StringBuffer> {
     }
 
     /**
-     * Append choosen character to StringBuffer.
+     * Line separator appended after each row of characters.
+     */
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    /**
+     * Write choosen character to its slot in the StringBuffer. Each tile owns a
+     * distinct slot, so tiles can be written in any order and from any thread.
      *
-     * @see AsciiConverter#addCharacterToOutput(Entry, int[], int, int, int)
+     * @see AsciiConverter#addCharacterToOutput(int, int[], int, int, int)
      */
     @Override
-    public void addCharacterToOutput(final Entry<Character, GrayscaleMatrix> characterEntry,
+    public void addCharacterToOutput(final int glyphIndex,
                                      final int[] sourceImagePixels, final int tileX, final int tileY, final int imageWidth) {
 
-        output.append(characterEntry.getKey());
-
-        // append new line at the end of the row
-        if ((tileX + 1) * characterCache.getCharacterImageSize().getWidth() == imageWidth) {
-            output.append(System.lineSeparator());
-        }
+        output.setCharAt(tileY * rowLength(imageWidth) + tileX, characterCache.getCharacter(glyphIndex));
 
     }
 
@@ -44,13 +43,33 @@ public class AsciiToStringConverter extends AsciiConverter<StringBuffer> {
     }
 
     /**
-     * Creates an empty string buffer;
+     * Creates a string buffer sized for every character, with the line
+     * separators already in place at the end of each row.
      *
      * @see AsciiConverter#initializeOutput(int, int)
      */
     @Override
     protected StringBuffer initializeOutput(final int imageWidth, final int imageHeight) {
-        return new StringBuffer();
+        int rowLength = rowLength(imageWidth);
+        int rows = imageHeight / characterCache.getCharacterImageSize().height;
+
+        StringBuffer buffer = new StringBuffer(rows * rowLength);
+        buffer.setLength(rows * rowLength);
+        for (int row = 0; row < rows; row++) {
+            int rowEnd = (row + 1) * rowLength;
+            buffer.replace(rowEnd - LINE_SEPARATOR.length(), rowEnd, LINE_SEPARATOR);
+        }
+        return buffer;
+    }
+
+    /**
+     * Number of chars taken by a row of tiles, including the line separator.
+     *
+     * @param imageWidth the image width
+     * @return the row length
+     */
+    private int rowLength(final int imageWidth) {
+        return imageWidth / characterCache.getCharacterImageSize().width + LINE_SEPARATOR.length();
     }
 
 }
\ No newline at end of file
@@ -15,4 +15,36 @@ public interface BestCharacterFitStrategy {
      * chosen as best fit.
      */
     float calculateError(final GrayscaleMatrix character, final GrayscaleMatrix tile);
+
+    /**
+     * Returns the error between the character and tile matrices, allowing the
+     * calculation to stop as soon as the error is known to reach the bound.
+     * The default implementation always calculates the full error.
+     *
+     * @param character the character
+     * @param tile      the tile
+     * @param bound     error of the best fit found so far
+     * @return the exact error if it is less than the bound, otherwise any
+     * value not less than the bound
+     */
+    default float calculateError(final GrayscaleMatrix character, final GrayscaleMatrix tile, final float bound) {
+        return calculateError(character, tile);
+    }
+
+    /**
+     * Returns a lower bound of the error between a character and a tile, knowing
+     * only their mean intensities. It must not decrease as the distance between
+     * the means grows, so that once a character is ruled out, every character
+     * even further away in mean intensity can be skipped. The default
+     * implementation returns negative infinity, which never rules out any
+     * character: errors may be negative, so no finite value is safe in
+     * general.
+     *
+     * @param characterMean mean intensity of the character
+     * @param tileMean      mean intensity of the tile
+     * @return the lower bound of {@link #calculateError(GrayscaleMatrix, GrayscaleMatrix)}
+     */
+    default float lowerBound(final float characterMean, final float tileMean) {
+        return Float.NEGATIVE_INFINITY;
+    }
 }
\ No newline at end of file
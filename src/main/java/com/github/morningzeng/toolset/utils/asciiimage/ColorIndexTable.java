@@ -0,0 +1,118 @@
+package com.github.morningzeng.toolset.utils.asciiimage;
+
+import java.util.Arrays;
+
+/**
+ * An open addressing hash table from packed 24-bit colors to palette indices,
+ * used to look up each distinct color of a frame once instead of once per
+ * pixel. Not thread safe.
+ */
+final class ColorIndexTable {
+
+    /**
+     * Value returned by {@link #get(int)} when a color is absent.
+     */
+    static final int MISSING = -1;
+
+    private static final int EMPTY = -1;
+
+    private int[] colors;
+    private int[] indices;
+    private int size;
+
+    /**
+     * Instantiates a new table sized for the given number of colors.
+     *
+     * @param expectedColors number of colors expected, the table grows past it
+     */
+    ColorIndexTable(final int expectedColors) {
+        int capacity = Integer.highestOneBit(Math.max(expectedColors, 8) * 2 - 1) << 1;
+        colors = new int[capacity];
+        indices = new int[capacity];
+        Arrays.fill(colors, EMPTY);
+    }
+
+    /**
+     * Packs color components into a key.
+     *
+     * @param b blue component
+     * @param g green component
+     * @param r red component
+     * @return the packed color
+     */
+    static int pack(final int b, final int g, final int r) {
+        return (b << 16) | (g << 8) | r;
+    }
+
+    /**
+     * Gets the index of a color.
+     *
+     * @param color packed color
+     * @return the index, or {@link #MISSING}
+     */
+    int get(final int color) {
+        int mask = colors.length - 1;
+        for (int slot = hash(color) & mask; ; slot = (slot + 1) & mask) {
+            int key = colors[slot];
+            if (key == color) {
+                return indices[slot];
+            }
+            if (key == EMPTY) {
+                return MISSING;
+            }
+        }
+    }
+
+    /**
+     * Sets the index of a color, replacing any previous one.
+     *
+     * @param color packed color
+     * @param index the index
+     */
+    void put(final int color, final int index) {
+        int mask = colors.length - 1;
+        int slot = hash(color) & mask;
+        while (colors[slot] != EMPTY && colors[slot] != color) {
+            slot = (slot + 1) & mask;
+        }
+        if (colors[slot] == EMPTY) {
+            if (2 * (size + 1) > colors.length) {
+                grow();
+                put(color, index);
+                return;
+            }
+            colors[slot] = color;
+            size++;
+        }
+        indices[slot] = index;
+    }
+
+    /**
+     * Gets the number of colors.
+     *
+     * @return the size
+     */
+    int size() {
+        return size;
+    }
+
+    private void grow() {
+        int[] oldColors = colors;
+        int[] oldIndices = indices;
+        colors = new int[oldColors.length * 2];
+        indices = new int[oldColors.length * 2];
+        Arrays.fill(colors, EMPTY);
+        size = 0;
+        for (int slot = 0; slot < oldColors.length; slot++) {
+            if (oldColors[slot] != EMPTY) {
+                put(oldColors[slot], oldIndices[slot]);
+            }
+        }
+    }
+
+    private static int hash(final int color) {
+        int h = color * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+}
@@ -11,14 +11,50 @@ public class ColorSquareErrorFitStrategy implements BestCharacterFitStrategy {
      */
     @Override
     public float calculateError(GrayscaleMatrix character, GrayscaleMatrix tile) {
+        return calculateError(character, tile, Float.MAX_VALUE);
+    }
+
+    /**
+     * Stops after the first row that brings the error to the bound, returning
+     * positive infinity.
+     *
+     * @see BestCharacterFitStrategy#calculateError(GrayscaleMatrix, GrayscaleMatrix, float)
+     */
+    @Override
+    public float calculateError(GrayscaleMatrix character, GrayscaleMatrix tile, float bound) {
+        final float[] characterData = character.getData();
+        final float[] tileData = tile.getData();
+        final int width = character.getWidth();
+        final int height = character.getHeight();
+        final float sumBound = bound * (width * height);
+
         float error = 0;
-        for (int i = 0; i < character.getData().length; i++) {
-            error += (character.getData()[i] - tile.getData()[i])
-                    * (character.getData()[i] - tile.getData()[i]);
+        for (int y = 0; y < height; y++) {
+            int characterIndex = character.indexOf(0, y);
+            int tileIndex = tile.indexOf(0, y);
+            for (int x = 0; x < width; x++) {
+                float difference = characterData[characterIndex + x] - tileData[tileIndex + x];
+                error += difference * difference;
+            }
+            if (error >= sumBound) {
+                // the rounded mean of a partial sum could fall just under the bound
+                return Float.POSITIVE_INFINITY;
+            }
         }
 
-        return error / character.getData().length;
+        return error / (width * height);
 
     }
 
+    /**
+     * The mean of squared differences is never less than the square of the
+     * mean difference.
+     *
+     * @see BestCharacterFitStrategy#lowerBound(float, float)
+     */
+    @Override
+    public float lowerBound(float characterMean, float tileMean) {
+        return (characterMean - tileMean) * (characterMean - tileMean);
+    }
+
 }
\ No newline at end of file
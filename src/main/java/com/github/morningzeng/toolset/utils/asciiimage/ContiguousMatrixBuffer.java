@@ -0,0 +1,53 @@
+package com.github.morningzeng.toolset.utils.asciiimage;
+
+import java.lang.ref.WeakReference;
+
+/**
+ * Reusable buffer that gives a contiguous copy of a strided matrix view.
+ * <p>
+ * The copy of the last requested matrix is kept, so matching one tile against
+ * every glyph copies the tile only once. Matrices are compared by identity:
+ * the pixels of a matrix must not change while the same instance is being
+ * matched. The matrix is only weakly referenced, so a buffer kept in a
+ * long-lived thread does not pin the image it was a view of. Instances are not
+ * thread safe, keep one per thread.
+ */
+final class ContiguousMatrixBuffer {
+
+    /**
+     * The matrix the buffer currently holds a copy of.
+     */
+    private WeakReference<GrayscaleMatrix> source = new WeakReference<>(null);
+
+    /**
+     * The contiguous copy of {@link #source}, owned by the buffer.
+     */
+    private GrayscaleMatrix copy;
+
+    /**
+     * Gets the matrix itself if it is already contiguous, or a contiguous copy
+     * of it otherwise.
+     *
+     * @param matrix the matrix
+     * @return a contiguous matrix with the same pixels
+     */
+    GrayscaleMatrix contiguous(final GrayscaleMatrix matrix) {
+        if (matrix.isContiguous()) {
+            return matrix;
+        }
+        if (matrix == source.get()) {
+            return copy;
+        }
+
+        if (copy == null || copy.getWidth() != matrix.getWidth() || copy.getHeight() != matrix.getHeight()) {
+            copy = new GrayscaleMatrix(matrix.getWidth(), matrix.getHeight());
+        }
+        for (int y = 0; y < matrix.getHeight(); y++) {
+            System.arraycopy(matrix.getData(), matrix.indexOf(0, y),
+                    copy.getData(), copy.indexOf(0, y), matrix.getWidth());
+        }
+        source = new WeakReference<>(matrix);
+        return copy;
+    }
+
+}
@@ -0,0 +1,83 @@
+package com.github.morningzeng.toolset.utils.asciiimage;
+
+/**
+ * Calculates Structural Similarity index (SSIM) between the images, like
+ * {@link StructuralSimilarityFitStrategy}, with a cheaper inner loop:
+ * <ul>
+ *     <li>tiles are gathered into a per-thread contiguous buffer once per tile,
+ *     so the kernel runs over a single flat pixel run;</li>
+ *     <li>the constant factor {@code (2 + C2) / C2} is applied once to the sum
+ *     instead of once per pixel;</li>
+ *     <li>pixels are processed four at a time, adding the ratios of each pair
+ *     as {@code (a * d + c * b) / (b * d)} and then the two pairs the same way,
+ *     so only one division is needed per four pixels.</li>
+ * </ul>
+ * Results may differ from the plain strategy in the last bits.
+ *
+ * @see <a href="http://en.wikipedia.org/wiki/Structural_similarity">for more info.</a>
+ */
+public class FastStructuralSimilarityFitStrategy implements BestCharacterFitStrategy {
+
+    /**
+     * Number of pixels processed per unrolled step.
+     */
+    private static final int LANES = 4;
+
+    private static final float C1 = (0.01f * 255f) * (0.01f * 255f);
+    private static final float C2 = (0.03f * 255f) * (0.03f * 255f);
+    private static final float SCALE = (2 + C2) / C2;
+
+    private final ThreadLocal<ContiguousMatrixBuffer> characterBuffers = ThreadLocal.withInitial(ContiguousMatrixBuffer::new);
+    private final ThreadLocal<ContiguousMatrixBuffer> tileBuffers = ThreadLocal.withInitial(ContiguousMatrixBuffer::new);
+
+    @Override
+    public float calculateError(GrayscaleMatrix character, GrayscaleMatrix tile) {
+        final GrayscaleMatrix contiguousCharacter = characterBuffers.get().contiguous(character);
+        final GrayscaleMatrix contiguousTile = tileBuffers.get().contiguous(tile);
+
+        final float[] characterData = contiguousCharacter.getData();
+        final float[] tileData = contiguousTile.getData();
+        final int characterOffset = contiguousCharacter.getOffset();
+        final int tileOffset = contiguousTile.getOffset();
+        final int length = character.getWidth() * character.getHeight();
+        final int laneLength = length - length % LANES;
+
+        float score = 0f;
+        int i = 0;
+        for (; i < laneLength; i += LANES) {
+            final float c0 = characterData[characterOffset + i];
+            final float c1 = characterData[characterOffset + i + 1];
+            final float c2 = characterData[characterOffset + i + 2];
+            final float c3 = characterData[characterOffset + i + 3];
+            final float t0 = tileData[tileOffset + i];
+            final float t1 = tileData[tileOffset + i + 1];
+            final float t2 = tileData[tileOffset + i + 2];
+            final float t3 = tileData[tileOffset + i + 3];
+
+            final float numerator0 = 2 * c0 * t0 + C1;
+            final float numerator1 = 2 * c1 * t1 + C1;
+            final float numerator2 = 2 * c2 * t2 + C1;
+            final float numerator3 = 2 * c3 * t3 + C1;
+            final float denominator0 = c0 * c0 + t0 * t0 + C1;
+            final float denominator1 = c1 * c1 + t1 * t1 + C1;
+            final float denominator2 = c2 * c2 + t2 * t2 + C1;
+            final float denominator3 = c3 * c3 + t3 * t3 + C1;
+
+            final float denominator01 = denominator0 * denominator1;
+            final float denominator23 = denominator2 * denominator3;
+            final float numerator01 = numerator0 * denominator1 + numerator1 * denominator0;
+            final float numerator23 = numerator2 * denominator3 + numerator3 * denominator2;
+
+            score += (numerator01 * denominator23 + numerator23 * denominator01) / (denominator01 * denominator23);
+        }
+        for (; i < length; i++) {
+            final float c = characterData[characterOffset + i];
+            final float t = tileData[tileOffset + i];
+            score += (2 * c * t + C1) / (c * c + t * t + C1);
+        }
+
+        // average and convert score to error
+        return 1 - (score * SCALE / length);
+    }
+
+}
@@ -1,14 +1,10 @@
 package com.github.morningzeng.toolset.utils.asciiimage;
 
-import com.intellij.ui.JBColor;
 import com.intellij.util.ui.ImageUtil;
 import lombok.Getter;
 import lombok.SneakyThrows;
 
-import java.awt.AlphaComposite;
-import java.awt.Color;
 import java.awt.Dimension;
-import java.awt.Graphics2D;
 import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 import java.awt.image.DataBufferInt;
@@ -19,7 +15,10 @@ import java.io.InputStream;
 import java.net.URI;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 /**
  * Class GifDecoder - Decodes a GIF file into one or more frames.
@@ -34,6 +33,17 @@ import java.util.List;
  *       // do something with frame
  *    }
  * </pre>
+ * Large files can be decoded one frame at a time instead, without keeping
+ * the previous frames:
+ * <pre>
+ *    GifDecoder d = new GifDecoder();
+ *    d.open("sample.gif");
+ *    Iterator&lt;GifFrame&gt; frames = d.frames();
+ *    while (frames.hasNext()) {
+ *       GifFrame frame = frames.next();  // valid until the next call to next()
+ *       // do something with frame.image and frame.delay
+ *    }
+ * </pre>
  * No copyright asserted on the source code of this class.  May be used for
  * any purpose, however, refer to the Unisys LZW patent for any additional
  * restrictions.  Please forward any corrections to questions at fmsware.com.
@@ -59,7 +69,29 @@ public class GifDecoder {
      */
     public static final int STATUS_OPEN_ERROR = 2;
     protected static final int MaxStackSize = 4096;
+    /**
+     * Number of frame images recycled while streaming: the current frame, and
+     * the two before it which later frames may be disposed to.
+     */
+    protected static final int StreamBufferCount = 3;
+    /**
+     * Largest pixel index array, in bytes, kept in the LZW buffers of a thread.
+     * Larger frames get an array of their own.
+     */
+    protected static final int MaxPooledPixels = 1 << 20;
+    /**
+     * LZW decoder working arrays of each thread, reused across frames and files.
+     * They are fetched on each decode, as a decoder may move between threads.
+     */
+    protected static final ThreadLocal<LzwBuffers> LZW_BUFFERS = ThreadLocal.withInitial(LzwBuffers::new);
     protected BufferedInputStream in;
+    /**
+     * -- GETTER --
+     * <p>
+     * Gets the read status of the file, {@link #STATUS_OK} if no error was
+     * encountered so far.
+     */
+    @Getter
     protected int status;
     protected int width; // full image width
     protected int height; // full image height
@@ -98,11 +130,7 @@ public class GifDecoder {
     protected boolean transparency = false; // use transparent color
     protected int delay = 0; // delay in milliseconds
     protected int transIndex; // transparent color index
-    // max decoder pixel stack size
-    // LZW decoder working arrays
-    protected short[] prefix;
-    protected byte[] suffix;
-    protected byte[] pixelStack;
+    // pixel indices of the frame being read, from decodeImageData to setPixels
     protected byte[] pixels;
 
     protected List<GifFrame> frames; // frames read from the current file
@@ -116,6 +144,9 @@ public class GifDecoder {
     @Getter
     protected int frameCount;
 
+    protected boolean streaming; // frames are decoded on demand and not kept
+    protected BufferedImage[] frameBuffers = new BufferedImage[StreamBufferCount]; // recycled frame images
+
     /**
      * Gets display duration for specified frame.
      *
@@ -150,12 +181,13 @@ public class GifDecoder {
                 ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
 
         // fill in starting image contents based on last image's dispose code
+        boolean filled = false;
         if (lastDispose > 0) {
             if (lastDispose == 3) {
                 // use image before last
                 int n = frameCount - 2;
                 if (n > 0) {
-                    lastImage = getFrame(n - 1);
+                    lastImage = streaming ? frameBuffers[(n - 1) % StreamBufferCount] : getFrame(n - 1);
                 } else {
                     lastImage = null;
                 }
@@ -165,26 +197,30 @@ public class GifDecoder {
                 int[] prev =
                         ((DataBufferInt) lastImage.getRaster().getDataBuffer()).getData();
                 System.arraycopy(prev, 0, dest, 0, width * height);
+                filled = true;
                 // copy pixels
 
                 if (lastDispose == 2) {
                     // fill the last image rect area with background color
-                    Graphics2D g = image.createGraphics();
-                    Color c;
-                    if (transparency) {
-                        c = new JBColor(new Color(0, 0, 0, 0), new Color(0, 0, 0, 0));    // assume background is transparent
-                    } else {
-                        c = new JBColor(new Color(this.lastBgColor), new Color(this.lastBgColor)); // use given background color
+                    int c = transparency
+                            ? 0 // assume background is transparent
+                            : 0xff000000 | lastBgColor; // use given background color, opaque
+                    int left = Math.max(lastRect.x, 0);
+                    int right = Math.min(lastRect.x + lastRect.width, width);
+                    int bottom = Math.min(lastRect.y + lastRect.height, height);
+                    for (int line = Math.max(lastRect.y, 0); line < bottom && left < right; line++) {
+                        Arrays.fill(dest, line * width + left, line * width + right, c);
                     }
-                    g.setColor(c);
-                    g.setComposite(AlphaComposite.Src); // replace area
-                    g.fill(lastRect);
-                    g.dispose();
                 }
             }
         }
+        if (!filled && streaming) {
+            Arrays.fill(dest, 0); // recycled image still holds an older frame
+        }
 
         // copy each source line to the appropriate place in the destination
+        byte[] pixels = this.pixels;
+        int[] act = this.act;
         int pass = 1;
         int inc = 8;
         int iline = 0;
@@ -217,15 +253,13 @@ public class GifDecoder {
                 if ((k + width) < dlim) {
                     dlim = k + width; // past dest edge
                 }
-                int sx = i * iw; // start of line in source
-                while (dx < dlim) {
+                int sx = i * iw - dx; // start of line in source, relative to dest
+                for (; dx < dlim; dx++) {
                     // map color and insert in destination
-                    int index = ((int) pixels[sx++]) & 0xff;
-                    int c = act[index];
+                    int c = act[pixels[sx + dx] & 0xff];
                     if (c != 0) {
                         dest[dx] = c;
                     }
-                    dx++;
                 }
             }
         }
@@ -319,18 +353,10 @@ public class GifDecoder {
      * @param name String containing source
      * @return read status code (0 = no errors)
      */
-    @SneakyThrows
     public int read(String name) {
         status = STATUS_OK;
         try {
-            name = name.trim().toLowerCase();
-            if ((name.contains("file:"))
-                    || (name.indexOf(":/") > 0)) {
-                URL url = new URI(name).toURL();
-                in = new BufferedInputStream(url.openStream());
-            } else {
-                in = new BufferedInputStream(new FileInputStream(name));
-            }
+            in = openStream(name);
             status = read(in);
         } catch (IOException e) {
             status = STATUS_OPEN_ERROR;
@@ -339,9 +365,125 @@ public class GifDecoder {
         return status;
     }
 
+    /**
+     * Opens GIF image from stream for reading its frames one at a time
+     * through {@link #frames()}. Only the header is read here.
+     *
+     * @param is containing GIF file.
+     * @return read status code (0 = no errors)
+     */
+    public int open(InputStream is) {
+        init();
+        streaming = true;
+        lastDispose = 0;
+        lastImage = null;
+        if (is != null) {
+            if (!(is instanceof BufferedInputStream)) {
+                is = new BufferedInputStream(is);
+            }
+            in = (BufferedInputStream) is;
+            readHeader();
+        } else {
+            status = STATUS_OPEN_ERROR;
+        }
+        if (err()) {
+            close();
+        }
+        return status;
+    }
+
+    /**
+     * Opens GIF file from specified file/URL source for reading its frames one
+     * at a time through {@link #frames()}.
+     * (URL assumed if name contains ":/" or "file:")
+     *
+     * @param name String containing source
+     * @return read status code (0 = no errors)
+     */
+    public int open(String name) {
+        try {
+            return open(openStream(name));
+        } catch (IOException e) {
+            init();
+            status = STATUS_OPEN_ERROR;
+            return status;
+        }
+    }
+
+    /**
+     * Iterates over the frames of the file opened with {@link #open(String)},
+     * decoding each one when it is requested.
+     * <p>
+     * Frame images are recycled: a frame stays valid until the following call
+     * to {@link Iterator#next()}, so copy it to keep it longer. Iteration ends
+     * at the end of the file or at the first error, see {@link #getStatus()}.
+     * The source is closed once the iteration ends.
+     *
+     * @return iterator over the remaining frames
+     */
+    public Iterator<GifFrame> frames() {
+        return new Iterator<>() {
+            private GifFrame next;
+
+            @Override
+            public boolean hasNext() {
+                if (next == null && streaming && in != null) {
+                    if (readNextFrame()) {
+                        next = new GifFrame(image, delay);
+                    } else {
+                        close();
+                    }
+                }
+                return next != null;
+            }
+
+            @Override
+            public GifFrame next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                GifFrame frame = next;
+                next = null;
+                return frame;
+            }
+        };
+    }
+
+    /**
+     * Closes the source opened with {@link #open(String)}, ending the frame
+     * iteration.
+     */
+    public void close() {
+        if (in != null) {
+            try {
+                in.close();
+            } catch (IOException ignored) {
+            }
+            in = null;
+        }
+    }
+
+    /**
+     * Opens a buffered stream on a file/URL source
+     * (URL assumed if name contains ":/" or "file:")
+     */
+    @SneakyThrows
+    protected BufferedInputStream openStream(String name) throws IOException {
+        name = name.trim().toLowerCase();
+        if ((name.contains("file:"))
+                || (name.indexOf(":/") > 0)) {
+            URL url = new URI(name).toURL();
+            return new BufferedInputStream(url.openStream());
+        }
+        return new BufferedInputStream(new FileInputStream(name));
+    }
+
     /**
      * Decodes LZW image data into pixel array.
      * Adapted from John Cristy's ImageMagick.
+     * <p>
+     * The working arrays are borrowed from a per-thread pool on first use, so
+     * they are allocated once per thread rather than once per decoder.
      */
     protected void decodeImageData() {
         int NullCode = -1;
@@ -364,18 +506,14 @@ public class GifDecoder {
                 bi,
                 pi;
 
-        if ((pixels == null) || (pixels.length < npix)) {
-            pixels = new byte[npix]; // allocate new pixel array
-        }
-        if (prefix == null) {
-            prefix = new short[MaxStackSize];
-        }
-        if (suffix == null) {
-            suffix = new byte[MaxStackSize];
-        }
-        if (pixelStack == null) {
-            pixelStack = new byte[MaxStackSize + 1];
-        }
+        LzwBuffers buffers = LZW_BUFFERS.get();
+        this.pixels = buffers.pixels(npix);
+        // locals for the hot loop
+        short[] prefix = buffers.prefix;
+        byte[] suffix = buffers.suffix;
+        byte[] pixelStack = buffers.pixelStack;
+        byte[] pixels = this.pixels;
+        byte[] block = this.block;
 
         //  Initialize GIF data stream decoder.
 
@@ -407,7 +545,7 @@ public class GifDecoder {
                         }
                         bi = 0;
                     }
-                    datum += (((int) block[bi]) & 0xff) << bits;
+                    datum += (block[bi] & 0xff) << bits;
                     bits += 8;
                     bi++;
                     count--;
@@ -448,7 +586,7 @@ public class GifDecoder {
                     pixelStack[top++] = suffix[code];
                     code = prefix[code];
                 }
-                first = ((int) suffix[code]) & 0xff;
+                first = suffix[code] & 0xff;
 
                 //  Add a new string to the string table,
 
@@ -467,15 +605,17 @@ public class GifDecoder {
                 old_code = in_code;
             }
 
-            //  Pop a pixel off the pixel stack.
+            //  Pop the pixels off the pixel stack.
 
-            top--;
-            pixels[pi++] = pixelStack[top];
-            i++;
+            int n = Math.min(top, npix - i);
+            for (int k = 0; k < n; k++) {
+                pixels[pi++] = pixelStack[--top];
+            }
+            i += n;
         }
 
-        for (i = pi; i < npix; i++) {
-            pixels[i] = 0; // clear missing pixels
+        if (pi < npix) {
+            Arrays.fill(pixels, pi, npix, (byte) 0); // clear missing pixels
         }
 
     }
@@ -494,6 +634,7 @@ public class GifDecoder {
         status = STATUS_OK;
         frameCount = 0;
         frames = new ArrayList<>();
+        streaming = false;
         gct = null;
         lct = null;
     }
@@ -575,13 +716,27 @@ public class GifDecoder {
      */
     protected void readContents() {
         // read GIF file content blocks
-        boolean done = false;
-        while (!(done || err())) {
+        while (readNextFrame()) {
+            // until the terminator or an error
+        }
+    }
+
+    /**
+     * Reads GIF content blocks up to and including the next frame image.
+     *
+     * @return true if a frame was read, false at the terminator or on error
+     */
+    protected boolean readNextFrame() {
+        while (!err()) {
             int code = read();
             switch (code) {
 
                 case 0x2C: // image separator
+                    int count = frameCount;
                     readImage();
+                    if (frameCount > count) {
+                        return true;
+                    }
                     break;
 
                 case 0x21: // extension
@@ -610,8 +765,7 @@ public class GifDecoder {
                     break;
 
                 case 0x3b: // terminator
-                    done = true;
-                    break;
+                    return false;
 
                 case 0x00: // bad byte, but keep going and see what happens
                     break;
@@ -620,6 +774,7 @@ public class GifDecoder {
                     status = STATUS_FORMAT_ERROR;
             }
         }
+        return false;
     }
 
     /**
@@ -706,12 +861,25 @@ public class GifDecoder {
 
         frameCount++;
 
-        // create new image to receive frame data
-        image = ImageUtil.createImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+        if (streaming) {
+            // recycle the image of a frame no longer needed for disposal
+            int slot = (frameCount - 1) % StreamBufferCount;
+            image = frameBuffers[slot];
+            if (image == null || image.getWidth() != width || image.getHeight() != height) {
+                image = ImageUtil.createImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+                frameBuffers[slot] = image;
+            }
+        } else {
+            // create new image to receive frame data
+            image = ImageUtil.createImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+        }
 
         setPixels(); // transfer pixel data to image
+        pixels = null; // the array may be reused by another decoder of the thread
 
-        frames.add(new GifFrame(image, delay)); // add image to frame list
+        if (!streaming) {
+            frames.add(new GifFrame(image, delay)); // add image to frame list
+        }
 
         if (transparency) {
             act[transIndex] = save;
@@ -784,7 +952,31 @@ public class GifDecoder {
         } while ((blockSize > 0) && !err());
     }
 
-    protected static class GifFrame {
+    /**
+     * LZW decoder working arrays, shared by the decoders of a thread.
+     */
+    protected static final class LzwBuffers {
+        final short[] prefix = new short[MaxStackSize];
+        final byte[] suffix = new byte[MaxStackSize];
+        final byte[] pixelStack = new byte[MaxStackSize + 1];
+        private byte[] pixels;
+
+        /**
+         * Gets a pixel index array of at least the given size, pooled unless it
+         * is larger than {@link #MaxPooledPixels}.
+         */
+        byte[] pixels(int npix) {
+            if (npix > MaxPooledPixels) {
+                return new byte[npix];
+            }
+            if (pixels == null || pixels.length < npix) {
+                pixels = new byte[npix];
+            }
+            return pixels;
+        }
+    }
+
+    public static class GifFrame {
         public BufferedImage image;
         public int delay;
 
@@ -1,7 +1,27 @@
 package com.github.morningzeng.toolset.utils.asciiimage;
 
+import com.intellij.util.concurrency.AppExecutorUtil;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
 public class GifToAsciiConvert extends AsciiToImageConverter {
 
+    /**
+     * Marks the end of the converted frames queue.
+     */
+    private static final Future<BufferedImage> END_OF_FRAMES = CompletableFuture.completedFuture(null);
+
     public GifToAsciiConvert(AsciiImgCache characterCache,
                              BestCharacterFitStrategy characterFitStrategy) {
         super(characterCache, characterFitStrategy);
@@ -34,4 +54,133 @@ public class GifToAsciiConvert extends AsciiToImageConverter {
         return 0;//open disFile failed!
     }
 
-}
\ No newline at end of file
+    /**
+     * Converts the frames on a pool of workers, each with its own converter.
+     * <p>
+     * Frames are decoded one at a time by a decoding thread and handed over to
+     * the workers, and their results to the calling thread, which encodes them
+     * in frame order. At most {@code 2 * workers} frames are being converted or
+     * waiting to be encoded at any time, so memory use does not grow with the
+     * length of the animation. Decoded frames are copied into a fixed set of
+     * recycled images, returned once their conversion is done.
+     * <p>
+     * Workers copy the settings of this converter, except {@link #parallel}:
+     * frames are already converted concurrently.
+     *
+     * @param delay－－the delay time(ms) between each frame
+     * @param repeat－－he number of times the set of GIF frames should be played.0 means play indefinitely.
+     * @param workers－－the number of frames converted concurrently
+     * @return -1 if the source could not be read to its end, as the other
+     * overload, 0 if the target could not be written, 1 when done
+     * @throws RuntimeException the failure of a frame, unwrapped, or wrapped in
+     *                          an {@link UncheckedIOException} if it was an {@link IOException}
+     */
+    public int convertGitToAscii(String srcFilePath, String disFilePath, int delay, int repeat, int workers) {
+        if (workers <= 0) {
+            throw new IllegalArgumentException("Workers must be positive!");
+        }
+
+        GifDecoder decoder = new GifDecoder();
+        int status = decoder.open(srcFilePath);
+        if (status != 0) {
+            return -1;//srcfile not exist or open failed!
+        }
+        AnimatedGifEncoder e = new AnimatedGifEncoder();
+        if (!e.start(disFilePath)) {
+            decoder.close();
+            return 0;//open disFile failed!
+        }
+        e.setDelay(delay);   // 1 frame per delay(ms)
+        e.setRepeat(repeat);
+
+        BlockingQueue<Future<BufferedImage>> converted = new ArrayBlockingQueue<>(2 * workers);
+        // one per queued or converting frame, plus the one being decoded
+        BlockingQueue<BufferedImage> spareFrames = new ArrayBlockingQueue<>(2 * workers + 1);
+        for (int i = 0; i < 2 * workers + 1; i++) {
+            spareFrames.add(new BufferedImage(decoder.getFrameSize().width, decoder.getFrameSize().height,
+                    BufferedImage.TYPE_INT_ARGB));
+        }
+        ThreadLocal<AsciiToImageConverter> converters = ThreadLocal.withInitial(this::createFrameConverter);
+        ExecutorService conversion = AppExecutorUtil.createBoundedApplicationPoolExecutor("Ascii Gif Conversion", workers);
+        ExecutorService decoding = AppExecutorUtil.createBoundedApplicationPoolExecutor("Ascii Gif Decoding", 1);
+        try {
+            Future<?> frames = decoding.submit(() -> {
+                try {
+                    for (Iterator<GifDecoder.GifFrame> it = decoder.frames(); it.hasNext(); ) {
+                        BufferedImage frame = spareFrames.take();
+                        copyFrame(it.next().image, frame);
+                        converted.put(conversion.submit(() -> {
+                            try {
+                                return converters.get().convertImage(frame);
+                            } finally {
+                                spareFrames.add(frame);
+                            }
+                        }));
+                    }
+                } catch (RuntimeException ex) {
+                    converted.put(CompletableFuture.failedFuture(ex));
+                } finally {
+                    decoder.close();
+                }
+                converted.put(END_OF_FRAMES);
+                return null;
+            });
+
+            for (Future<BufferedImage> frame = converted.take(); frame != END_OF_FRAMES; frame = converted.take()) {
+                e.addFrame(frame.get());
+            }
+            frames.get();
+            if (decoder.getStatus() != GifDecoder.STATUS_OK) {
+                return -1;//srcfile truncated or corrupt, disFile incomplete!
+            }
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            if (cause instanceof IOException ioException) {
+                throw new UncheckedIOException(ioException);
+            }
+            throw new IllegalStateException(cause);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return 0;//interrupted, disFile incomplete!
+        } finally {
+            decoding.shutdownNow();
+            conversion.shutdownNow();
+            e.finish();
+        }
+        return 1;//done!
+    }
+
+    /**
+     * Copies a decoded frame, replacing every pixel of the target.
+     *
+     * @param source the decoded frame
+     * @param target the image receiving it
+     */
+    private static void copyFrame(BufferedImage source, BufferedImage target) {
+        Graphics2D g = target.createGraphics();
+        g.setComposite(AlphaComposite.Src);
+        g.drawImage(source, 0, 0, null);
+        g.dispose();
+    }
+
+    /**
+     * Creates a converter for one worker of the frame pipeline, with the same
+     * settings as this converter.
+     *
+     * @return the converter
+     */
+    protected AsciiToImageConverter createFrameConverter() {
+        AsciiToImageConverter converter = new AsciiToImageConverter(characterCache, characterFitStrategy);
+        converter.setCandidateCount(candidateCount);
+        converter.setTileMatchCache(tileMatchCache);
+        converter.setStreaming(streaming);
+        return converter;
+    }
+
+}
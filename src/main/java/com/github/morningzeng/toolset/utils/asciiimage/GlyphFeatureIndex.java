@@ -0,0 +1,277 @@
+package com.github.morningzeng.toolset.utils.asciiimage;
+
+/**
+ * A k-d tree over cheap features of each glyph, used to narrow the glyphs a
+ * tile is compared with down to a handful of candidates before running the
+ * exact {@link BestCharacterFitStrategy}.
+ * <p>
+ * The features of a matrix are the mean intensities of a
+ * {@value #SIGNATURE_SIZE}x{@value #SIGNATURE_SIZE} downscaled signature,
+ * followed by the standard deviation of its pixels. Glyphs close to a tile in
+ * this space are likely, but not guaranteed, to be the best fit.
+ * <p>
+ * The index is immutable. Queries take their scratch space from the caller,
+ * so it can be shared between threads.
+ */
+public class GlyphFeatureIndex {
+
+    /**
+     * Number of blocks per axis of the low resolution signature.
+     */
+    public static final int SIGNATURE_SIZE = 2;
+
+    /**
+     * Number of features per matrix.
+     */
+    public static final int DIMENSIONS = SIGNATURE_SIZE * SIGNATURE_SIZE + 1;
+
+    /**
+     * Features of each glyph, {@link #DIMENSIONS} values per glyph.
+     */
+    private final float[] glyphFeatures;
+
+    /**
+     * Glyph indices in tree order. The tree is implicit: the node of a range is
+     * its middle element, the left subtree the range before it and the right
+     * subtree the range after it.
+     */
+    private final int[] tree;
+
+    /**
+     * Split axis of the node at each tree position.
+     */
+    private final int[] splitAxis;
+
+    /**
+     * Builds the index of the given glyphs.
+     *
+     * @param glyphs the glyph bitmaps, all of the same size
+     */
+    public GlyphFeatureIndex(final GrayscaleMatrix[] glyphs) {
+        glyphFeatures = new float[glyphs.length * DIMENSIONS];
+        float[] features = new float[DIMENSIONS];
+        for (int i = 0; i < glyphs.length; i++) {
+            extractFeatures(glyphs[i], features);
+            System.arraycopy(features, 0, glyphFeatures, i * DIMENSIONS, DIMENSIONS);
+        }
+
+        tree = new int[glyphs.length];
+        splitAxis = new int[glyphs.length];
+        for (int i = 0; i < tree.length; i++) {
+            tree[i] = i;
+        }
+        build(0, tree.length);
+    }
+
+    /**
+     * Extracts the features of a matrix.
+     *
+     * @param matrix   the matrix
+     * @param features output array of at least {@link #DIMENSIONS} values
+     */
+    public static void extractFeatures(final GrayscaleMatrix matrix, final float[] features) {
+        final float[] data = matrix.getData();
+        final int width = matrix.getWidth();
+        final int height = matrix.getHeight();
+
+        for (int block = 0; block < DIMENSIONS; block++) {
+            features[block] = 0;
+        }
+        float sum = 0;
+        float squareSum = 0;
+        for (int y = 0; y < height; y++) {
+            int index = matrix.indexOf(0, y);
+            int blockRow = y * SIGNATURE_SIZE / height * SIGNATURE_SIZE;
+            for (int x = 0; x < width; x++) {
+                float pixel = data[index + x];
+                features[blockRow + x * SIGNATURE_SIZE / width] += pixel;
+                sum += pixel;
+                squareSum += pixel * pixel;
+            }
+        }
+
+        for (int block = 0; block < SIGNATURE_SIZE * SIGNATURE_SIZE; block++) {
+            int blockLength = blockLength(block % SIGNATURE_SIZE, width) * blockLength(block / SIGNATURE_SIZE, height);
+            features[block] = blockLength == 0 ? 0 : features[block] / blockLength;
+        }
+        int length = width * height;
+        float mean = sum / length;
+        features[DIMENSIONS - 1] = (float) Math.sqrt(Math.max(0, squareSum / length - mean * mean));
+    }
+
+    /**
+     * Number of pixels along one axis that fall into a signature block.
+     *
+     * @param block  block position along the axis
+     * @param length matrix length along the axis
+     * @return the block length
+     */
+    private static int blockLength(final int block, final int length) {
+        return ceilDiv((block + 1) * length, SIGNATURE_SIZE) - ceilDiv(block * length, SIGNATURE_SIZE);
+    }
+
+    private static int ceilDiv(final int dividend, final int divisor) {
+        return (dividend + divisor - 1) / divisor;
+    }
+
+    /**
+     * Finds the glyphs nearest to the given features.
+     *
+     * @param features   features of the tile, as extracted by
+     *                   {@link #extractFeatures(GrayscaleMatrix, float[])}
+     * @param candidates output array receiving glyph indices, nearest first.
+     *                   Its length is the number of glyphs requested.
+     * @param distances  scratch array at least as long as candidates
+     * @return the number of glyphs found, at most the length of candidates
+     */
+    public int findNearest(final float[] features, final int[] candidates, final float[] distances) {
+        int limit = Math.min(candidates.length, tree.length);
+        if (limit == 0) {
+            return 0;
+        }
+        return search(0, tree.length, features, candidates, distances, 0, limit);
+    }
+
+    /**
+     * Recursively searches a tree range, keeping candidates sorted by distance.
+     *
+     * @return the number of candidates found so far
+     */
+    private int search(final int from, final int to, final float[] features,
+                       final int[] candidates, final float[] distances, int found, final int limit) {
+        if (from >= to) {
+            return found;
+        }
+
+        int middle = (from + to) >>> 1;
+        int glyph = tree[middle];
+        found = offer(glyph, distance(features, glyph), candidates, distances, found, limit);
+
+        int axis = splitAxis[middle];
+        float difference = features[axis] - glyphFeatures[glyph * DIMENSIONS + axis];
+        boolean leftFirst = difference < 0;
+
+        found = leftFirst
+                ? search(from, middle, features, candidates, distances, found, limit)
+                : search(middle + 1, to, features, candidates, distances, found, limit);
+
+        // the far side can only hold closer glyphs if the splitting plane is
+        // closer than the worst candidate kept
+        if (found < limit || difference * difference < distances[found - 1]) {
+            found = leftFirst
+                    ? search(middle + 1, to, features, candidates, distances, found, limit)
+                    : search(from, middle, features, candidates, distances, found, limit);
+        }
+        return found;
+    }
+
+    /**
+     * Inserts a glyph into the sorted candidates if it is near enough.
+     *
+     * @return the new number of candidates
+     */
+    private static int offer(final int glyph, final float distance,
+                             final int[] candidates, final float[] distances, final int found, final int limit) {
+        if (found == limit && distance >= distances[found - 1]) {
+            return found;
+        }
+
+        int position = found == limit ? found - 1 : found;
+        while (position > 0 && distances[position - 1] > distance) {
+            candidates[position] = candidates[position - 1];
+            distances[position] = distances[position - 1];
+            position--;
+        }
+        candidates[position] = glyph;
+        distances[position] = distance;
+        return found == limit ? found : found + 1;
+    }
+
+    /**
+     * Squared euclidean distance between features and a glyph.
+     */
+    private float distance(final float[] features, final int glyph) {
+        int offset = glyph * DIMENSIONS;
+        float distance = 0;
+        for (int i = 0; i < DIMENSIONS; i++) {
+            float difference = features[i] - glyphFeatures[offset + i];
+            distance += difference * difference;
+        }
+        return distance;
+    }
+
+    /**
+     * Arranges a range of {@link #tree} into a subtree, splitting on the axis
+     * with the largest spread.
+     */
+    private void build(final int from, final int to) {
+        if (to - from <= 0) {
+            return;
+        }
+
+        int axis = widestAxis(from, to);
+        int middle = (from + to) >>> 1;
+        select(from, to - 1, middle, axis);
+        splitAxis[middle] = axis;
+
+        build(from, middle);
+        build(middle + 1, to);
+    }
+
+    /**
+     * Finds the feature with the largest spread within a range of glyphs.
+     */
+    private int widestAxis(final int from, final int to) {
+        int widest = 0;
+        float widestSpread = -1;
+        for (int axis = 0; axis < DIMENSIONS; axis++) {
+            float min = Float.MAX_VALUE;
+            float max = -Float.MAX_VALUE;
+            for (int i = from; i < to; i++) {
+                float value = glyphFeatures[tree[i] * DIMENSIONS + axis];
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+            }
+            if (max - min > widestSpread) {
+                widestSpread = max - min;
+                widest = axis;
+            }
+        }
+        return widest;
+    }
+
+    /**
+     * Partially sorts a range of {@link #tree} so the element at {@code k} is
+     * the one that would be there if the range was sorted along the axis.
+     */
+    private void select(int left, int right, final int k, final int axis) {
+        while (left < right) {
+            float pivot = glyphFeatures[tree[(left + right) >>> 1] * DIMENSIONS + axis];
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (glyphFeatures[tree[i] * DIMENSIONS + axis] < pivot) {
+                    i++;
+                }
+                while (glyphFeatures[tree[j] * DIMENSIONS + axis] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    int swap = tree[i];
+                    tree[i] = tree[j];
+                    tree[j] = swap;
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) {
+                right = j;
+            } else if (k >= i) {
+                left = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+}
@@ -3,9 +3,20 @@ package com.github.morningzeng.toolset.utils.asciiimage;
 
 import lombok.Getter;
 
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
+
 /**
  * A class that encapsulates a grayscale image. Color values are floats with
  * values between 0.0f and 255.0f.
+ * <p>
+ * A matrix may be a view into a larger pixel array: pixel (x, y) is stored at
+ * {@code data[offset + y * stride + x]}. Matrices created with a constructor
+ * own their data, with offset 0 and a stride equal to the width.
  */
 @Getter
 public class GrayscaleMatrix {
@@ -35,6 +46,22 @@ public class GrayscaleMatrix {
      * Gets the image height.
      */
     private final int height;
+    /**
+     * Index of the first pixel in the data array.
+     * <p>
+     * -- GETTER --
+     * <p>
+     * Gets the index of the first pixel.
+     */
+    private final int offset;
+    /**
+     * Distance in the data array between two vertically adjacent pixels.
+     * <p>
+     * -- GETTER --
+     * <p>
+     * Gets the row stride.
+     */
+    private final int stride;
 
     /**
      * Creates an empty image with the given dimensions.
@@ -43,7 +70,23 @@ public class GrayscaleMatrix {
      * @param height image height
      */
     public GrayscaleMatrix(final int width, final int height) {
-        data = new float[width * height];
+        this(new float[width * height], 0, width, width, height);
+    }
+
+    /**
+     * Creates a matrix over existing pixel data.
+     *
+     * @param data   pixel data
+     * @param offset index of the first pixel
+     * @param stride row stride
+     * @param width  image width
+     * @param height image height
+     */
+    private GrayscaleMatrix(final float[] data, final int offset, final int stride,
+                            final int width, final int height) {
+        this.data = data;
+        this.offset = offset;
+        this.stride = stride;
         this.width = width;
         this.height = height;
     }
@@ -57,17 +100,110 @@ public class GrayscaleMatrix {
      */
     public GrayscaleMatrix(final int[] pixels, final int width, final int height) {
         this(width, height);
+        setPixels(pixels);
+    }
 
+    /**
+     * Replaces every pixel from a ARGB bitmap image of the same size, so one
+     * matrix can be reused for successive images.
+     *
+     * @param pixels pixel data in ARGB format
+     */
+    public void setPixels(final int[] pixels) {
         if (width * height != pixels.length) {
             throw new IllegalArgumentException(
                     "Pixels array does not match specified width and height!");
         }
 
-        for (int i = 0; i < data.length; i++) {
-            data[i] = convertRGBToGrayscale(pixels[i]);
+        for (int y = 0; y < height; y++) {
+            int index = indexOf(0, y);
+            for (int x = 0; x < width; x++) {
+                data[index + x] = convertRGBToGrayscale(pixels[y * width + x]);
+            }
         }
     }
 
+    /**
+     * Instantiates a new grayscale matrix from a region of an image.
+     *
+     * @param image  the image
+     * @param startX x coordinate of the region start
+     * @param startY y coordinate of the region start
+     * @param width  region width
+     * @param height region height
+     * @return matrix of the region
+     * @see #setPixels(BufferedImage, int, int)
+     */
+    public static GrayscaleMatrix fromImage(final BufferedImage image, final int startX, final int startY,
+                                            final int width, final int height) {
+        GrayscaleMatrix matrix = new GrayscaleMatrix(width, height);
+        matrix.setPixels(image, startX, startY);
+        return matrix;
+    }
+
+    /**
+     * Replaces every pixel from a region of an image, the size of this matrix.
+     * <p>
+     * {@code TYPE_INT_RGB}, {@code TYPE_INT_ARGB} and {@code TYPE_3BYTE_BGR}
+     * images are read straight from their data buffer. Other images go through
+     * {@link BufferedImage#getRGB(int, int, int, int, int[], int, int)}, which
+     * converts every pixel through the color model.
+     *
+     * @param image  the image
+     * @param startX x coordinate of the region start
+     * @param startY y coordinate of the region start
+     */
+    public void setPixels(final BufferedImage image, final int startX, final int startY) {
+        Raster raster = image.getRaster();
+        if (startX < 0 || startY < 0 || startX + width > raster.getWidth() || startY + height > raster.getHeight()) {
+            throw new IllegalArgumentException("Region exceeds the image bounds!");
+        }
+
+        int rasterX = startX - raster.getSampleModelTranslateX();
+        int rasterY = startY - raster.getSampleModelTranslateY();
+
+        switch (image.getType()) {
+            case BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_INT_ARGB -> {
+                if (raster.getDataBuffer() instanceof DataBufferInt buffer
+                        && raster.getSampleModel() instanceof SinglePixelPackedSampleModel sampleModel) {
+                    int[] pixels = buffer.getData();
+                    int scanline = sampleModel.getScanlineStride();
+                    for (int y = 0; y < height; y++) {
+                        int source = buffer.getOffset() + (rasterY + y) * scanline + rasterX;
+                        int index = indexOf(0, y);
+                        for (int x = 0; x < width; x++) {
+                            data[index + x] = convertRGBToGrayscale(pixels[source + x]);
+                        }
+                    }
+                    return;
+                }
+            }
+            case BufferedImage.TYPE_3BYTE_BGR -> {
+                if (raster.getDataBuffer() instanceof DataBufferByte buffer
+                        && raster.getSampleModel() instanceof ComponentSampleModel sampleModel) {
+                    byte[] pixels = buffer.getData();
+                    int scanline = sampleModel.getScanlineStride();
+                    int pixelStride = sampleModel.getPixelStride();
+                    int[] bandOffsets = sampleModel.getBandOffsets();
+                    for (int y = 0; y < height; y++) {
+                        int source = buffer.getOffset() + (rasterY + y) * scanline + rasterX * pixelStride;
+                        int index = indexOf(0, y);
+                        for (int x = 0; x < width; x++, source += pixelStride) {
+                            data[index + x] = luma(pixels[source + bandOffsets[0]] & 0xFF,
+                                    pixels[source + bandOffsets[1]] & 0xFF,
+                                    pixels[source + bandOffsets[2]] & 0xFF);
+                        }
+                    }
+                    return;
+                }
+            }
+            default -> {
+            }
+        }
+
+        setPixels(image.getRGB(startX, startY, width, height, null, 0, width));
+    }
+
     /**
      * Creates a new matrix from a sub region.
      *
@@ -88,32 +224,119 @@ public class GrayscaleMatrix {
 
         GrayscaleMatrix output = new GrayscaleMatrix(width, height);
 
-        for (int i = 0; i < output.data.length; i++) {
-            int xOffset = i % width;
-            int yOffset = i / width;
-
-            int index = ArrayUtils.convert2DTo1D(startPixelX + xOffset,
-                    startPixelY + yOffset, source.width);
-            output.data[i] = source.data[index];
+        for (int y = 0; y < height; y++) {
+            System.arraycopy(source.data, source.indexOf(startPixelX, startPixelY + y),
+                    output.data, y * width, width);
         }
 
         return output;
     }
 
+    /**
+     * Creates a view of a sub region. The view shares the pixel data of the
+     * source matrix, so no pixels are copied.
+     *
+     * @param source      source matrix
+     * @param width       sub region width
+     * @param height      subregion height
+     * @param startPixelX x coordinate of sub region start
+     * @param startPixelY y coordinate of sub region start
+     * @return matrix backed by the specified sub region
+     */
+    public static GrayscaleMatrix createView(
+            final GrayscaleMatrix source, final int width, final int height,
+            final int startPixelX, final int startPixelY) {
+        if (width <= 0 || height <= 0 || startPixelX < 0 || startPixelY < 0
+                || startPixelX + width > source.width
+                || startPixelY + height > source.height) {
+            throw new IllegalArgumentException("Illegal sub region size!");
+        }
+
+        return new GrayscaleMatrix(source.data, source.indexOf(startPixelX, startPixelY),
+                source.stride, width, height);
+    }
+
+    /**
+     * Creates a matrix over existing pixel data without copying it.
+     *
+     * @param data   pixel data, stored row by row
+     * @param width  image width
+     * @param height image height
+     * @return matrix backed by the given data
+     */
+    public static GrayscaleMatrix createView(final float[] data, final int width, final int height) {
+        if (width * height != data.length) {
+            throw new IllegalArgumentException(
+                    "Data array does not match specified width and height!");
+        }
+
+        return new GrayscaleMatrix(data, 0, width, width, height);
+    }
+
+    /**
+     * Calculates the mean intensity of the pixels.
+     *
+     * @return the mean, between 0.0f and 255.0f
+     */
+    public float mean() {
+        float sum = 0;
+        for (int y = 0; y < height; y++) {
+            int index = indexOf(0, y);
+            for (int x = 0; x < width; x++) {
+                sum += data[index + x];
+            }
+        }
+        return sum / (width * height);
+    }
+
+    /**
+     * Whether the rows of this matrix follow each other without gaps in the
+     * data array, so its pixels can be scanned as one run from
+     * {@link #getOffset()}.
+     *
+     * @return true if the pixels are contiguous
+     */
+    public boolean isContiguous() {
+        return stride == width || height == 1;
+    }
+
+    /**
+     * Gets the index of a pixel in the data array.
+     *
+     * @param x the x coordinate
+     * @param y the y coordinate
+     * @return index in the data array
+     */
+    public int indexOf(final int x, final int y) {
+        return offset + y * stride + x;
+    }
+
     /**
      * Convert ARGB color to grayscale float.
      *
      * @param rgbColor ARGB color
      * @return Grayscale float with value between 0.0f and 255.0f.
      */
-    private float convertRGBToGrayscale(final int rgbColor) {
+    private static float convertRGBToGrayscale(final int rgbColor) {
         // extract components
         int red = (rgbColor >> 16) & 0xFF;
         int green = (rgbColor >> 8) & 0xFF;
         int blue = rgbColor & 0xFF;
 
-        // convert to grayscale
-        return 0.3f * red + 0.59f * green + 0.11f * blue;
+        return luma(red, green, blue);
+    }
+
+    /**
+     * Convert color components to grayscale with integer math, weighting them
+     * 77/256, 151/256 and 28/256 (about 0.3, 0.59 and 0.11).
+     *
+     * @param red   red component
+     * @param green green component
+     * @param blue  blue component
+     * @return Grayscale float with an integral value between 0.0f and 255.0f.
+     */
+    private static float luma(final int red, final int green, final int blue) {
+        return (77 * red + 151 * green + 28 * blue) >> 8;
     }
 
 }
\ No newline at end of file
@@ -2,16 +2,27 @@ package com.github.morningzeng.toolset.utils.asciiimage;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
 
 //==============================================================================
 //  Adapted from Jef Poskanzer's Java port by way of J. M. G. Elliott.
 //  K Weiner 12/00
+//
+//  Reusable: one instance encodes any number of frames, each one either at
+//  once through encode() or in chunks of rows through begin(), write() and
+//  end(). Encoded data is assembled in a ByteBuffer, drained to an
+//  OutputStream or a WritableByteChannel (such as a FileChannel) whenever it
+//  fills up, or left in a caller provided buffer.
 
 class LZWEncoder {
 
     static final int BITS = 12;
     static final int H_SIZE = 5003; // 80% occupancy
     private static final int EOF = -1;
+    private static final int BUFFER_SIZE = 8192;
     // output
     //
     // Output the given code.
@@ -26,15 +37,11 @@ class LZWEncoder {
     //      Maintain a BITS character long buffer (so that 8 codes will
     // fit in it exactly).  Use the VAX insv instruction to insert each
     // code in turn.  When the buffer fills up empty it and start over.
-    private final int imgW;
-    private final int imgH;
-    private final byte[] pixAry;
-
     // GIFCOMPR.C       - GIF Image compression routines
     //
     // Lempel-Ziv compression based on 'compress'.  GIF modifications by
     // David Rowley (mgardi@watdcsu.waterloo.edu)
-    private final int initCodeSize;
+    private int initCodeSize;
     int n_bits; // number of bits/code
     int maxBits = BITS; // user settable max # bits/code
     int maxcode; // maximum code, given n_bits
@@ -96,82 +103,140 @@ class LZWEncoder {
     int a_count;
     // Define the storage for the packet accumulator
     byte[] accum = new byte[256];
-    private int remaining;
-    private int curPixel;
-
-    //----------------------------------------------------------------------------
-    LZWEncoder(int width, int height, byte[] pixels, int color_depth) {
-        imgW = width;
-        imgH = height;
-        pixAry = pixels;
-        initCodeSize = Math.max(2, color_depth);
-    }
+    // hashing state kept between chunks
+    private int ent = EOF; // current prefix code, EOF before the first pixel
+    private int hshift;
+    // output
+    private final ByteBuffer ownBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private ByteBuffer buffer; // encoded data is assembled here
+    private OutputStream stream; // buffer is drained here when full, or
+    private WritableByteChannel channel; // here, or must hold all the data
 
     // Add a character to the end of the current packet, and if it is 254
-    // characters, flush the packet to disk.
-    void char_out(byte c, OutputStream outs) throws IOException {
+    // characters, flush the packet to the buffer.
+    void char_out(byte c) throws IOException {
         accum[a_count++] = c;
         if (a_count >= 254) {
-            flush_char(outs);
+            flush_char();
         }
     }
 
     // Clear out the hash table
 
     // table clear for block compress
-    void cl_block(OutputStream outs) throws IOException {
+    void cl_block() throws IOException {
         cl_hash(hSize);
         free_ent = ClearCode + 2;
         clear_flg = true;
 
-        output(ClearCode, outs);
+        output(ClearCode);
     }
 
     // reset code table
     void cl_hash(int hsize) {
-        for (int i = 0; i < hsize; ++i) {
-            hTab[i] = -1;
-        }
+        Arrays.fill(hTab, 0, hsize, -1);
     }
 
-    void compress(int init_bits, OutputStream outs) throws IOException {
-        int fcode;
-        int i /* = 0 */;
-        int c;
-        int ent;
-        int disp;
-        int hSize_reg;
-        int hshift;
+    //----------------------------------------------------------------------------
+    // Encode a whole frame of indexed pixels to a stream
+    void encode(byte[] pixels, int color_depth, OutputStream os) throws IOException {
+        begin(color_depth, os);
+        write(pixels, 0, pixels.length);
+        end();
+    }
+
+    // Encode a whole frame of indexed pixels to a channel
+    void encode(byte[] pixels, int color_depth, WritableByteChannel ch) throws IOException {
+        begin(color_depth, ch);
+        write(pixels, 0, pixels.length);
+        end();
+    }
+
+    // Start a frame drained to a stream
+    void begin(int color_depth, OutputStream os) throws IOException {
+        stream = os;
+        channel = null;
+        start(color_depth, ownBuffer);
+    }
+
+    // Start a frame drained to a channel, through the given buffer if any
+    void begin(int color_depth, WritableByteChannel ch, ByteBuffer buf) throws IOException {
+        stream = null;
+        channel = ch;
+        start(color_depth, (buf != null) ? buf.clear() : ownBuffer);
+    }
+
+    void begin(int color_depth, WritableByteChannel ch) throws IOException {
+        begin(color_depth, ch, null);
+    }
+
+    // Start a frame appended to the given buffer, which must have room for it
+    void begin(int color_depth, ByteBuffer buf) throws IOException {
+        stream = null;
+        channel = null;
+        start(color_depth, buf);
+    }
+
+    private void start(int color_depth, ByteBuffer buf) throws IOException {
+        buffer = buf;
+        if (buffer == ownBuffer) {
+            buffer.clear();
+        }
+        initCodeSize = Math.max(2, color_depth);
+        ensure(1);
+        buffer.put((byte) initCodeSize); // write "initial code size" byte
 
         // Set up the globals:  g_init_bits - initial number of bits
-        g_init_bits = init_bits;
+        g_init_bits = initCodeSize + 1;
 
         // Set up the necessary values
         clear_flg = false;
         n_bits = g_init_bits;
         maxcode = MAXCODE(n_bits);
 
-        ClearCode = 1 << (init_bits - 1);
+        ClearCode = 1 << (g_init_bits - 1);
         EOFCode = ClearCode + 1;
         free_ent = ClearCode + 2;
 
         a_count = 0; // clear packet
+        cur_accum = 0;
+        cur_bits = 0;
 
-        ent = nextPixel();
+        ent = EOF;
 
+        int fcode;
         hshift = 0;
         for (fcode = hSize; fcode < 65536; fcode *= 2) {
             ++hshift;
         }
         hshift = 8 - hshift; // set hash code range bound
 
-        hSize_reg = hSize;
-        cl_hash(hSize_reg); // clear hash table
+        cl_hash(hSize); // clear hash table
 
-        output(ClearCode, outs);
+        output(ClearCode);
+    }
+
+    // Compress the next pixels of the frame, such as a chunk of rows
+    void write(byte[] pixels, int offset, int length) throws IOException {
+        int fcode;
+        int i /* = 0 */;
+        int c;
+        int ent = this.ent;
+        int disp;
+        int hSize_reg = hSize;
+        int hshift = this.hshift;
+        int[] hTab = this.hTab;
+        int[] codeTab = this.codeTab;
+        int p = offset;
+        int end = offset + length;
+
+        if ((ent == EOF) && (p < end)) {
+            ent = pixels[p++] & 0xff;
+        }
 
         outer_loop:
-        while ((c = nextPixel()) != EOF) {
+        while (p < end) {
+            c = pixels[p++] & 0xff;
             fcode = (c << maxBits) + ent;
             i = (c << hshift) ^ ent; // xor hashing
 
@@ -195,58 +260,73 @@ class LZWEncoder {
                     }
                 } while (hTab[i] >= 0);
             }
-            output(ent, outs);
+            output(ent);
             ent = c;
             if (free_ent < maxMaxcode) {
                 codeTab[i] = free_ent++; // code -> hashtable
                 hTab[i] = fcode;
             } else {
-                cl_block(outs);
+                cl_block();
             }
         }
-        // Put out the final code.
-        output(ent, outs);
-        output(EOFCode, outs);
+        this.ent = ent;
     }
 
-    //----------------------------------------------------------------------------
-    void encode(OutputStream os) throws IOException {
-        os.write(initCodeSize); // write "initial code size" byte
-
-        remaining = imgW * imgH; // reset navigation variables
-        curPixel = 0;
-
-        compress(initCodeSize + 1, os); // compress and write the pixel data
-
-        os.write(0); // write block terminator
+    // Finish the frame and drain the data
+    void end() throws IOException {
+        if (ent != EOF) {
+            // Put out the final code.
+            output(ent);
+        }
+        output(EOFCode);
+        ensure(1);
+        buffer.put((byte) 0); // write block terminator
+        if ((stream != null) || (channel != null)) {
+            drain();
+        }
+        ent = EOF;
+        stream = null;
+        channel = null;
+        buffer = null;
     }
 
-    // Flush the packet to disk, and reset the accumulator
-    void flush_char(OutputStream outs) throws IOException {
+    // Flush the packet to the buffer, and reset the accumulator
+    void flush_char() throws IOException {
         if (a_count > 0) {
-            outs.write(a_count);
-            outs.write(accum, 0, a_count);
+            ensure(a_count + 1);
+            buffer.put((byte) a_count);
+            buffer.put(accum, 0, a_count);
             a_count = 0;
         }
     }
 
-    final int MAXCODE(int n_bits) {
-        return (1 << n_bits) - 1;
+    // Make room in the buffer, draining it if possible
+    private void ensure(int n) throws IOException {
+        if (buffer.remaining() < n) {
+            if ((stream == null) && (channel == null)) {
+                throw new BufferOverflowException();
+            }
+            drain();
+        }
     }
 
-    //----------------------------------------------------------------------------
-    // Return the next pixel from the image
-    //----------------------------------------------------------------------------
-    private int nextPixel() {
-        if (remaining == 0) {
-            return EOF;
+    private void drain() throws IOException {
+        buffer.flip();
+        if (stream != null) {
+            stream.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        } else {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
         }
-        --remaining;
-        byte pix = pixAry[curPixel++];
-        return pix & 0xff;
+        buffer.clear();
+    }
+
+    final int MAXCODE(int n_bits) {
+        return (1 << n_bits) - 1;
     }
 
-    void output(int code, OutputStream outs) throws IOException {
+    void output(int code) throws IOException {
         cur_accum &= masks[cur_bits];
 
         if (cur_bits > 0) {
@@ -258,7 +338,7 @@ class LZWEncoder {
         cur_bits += n_bits;
 
         while (cur_bits >= 8) {
-            char_out((byte) (cur_accum & 0xff), outs);
+            char_out((byte) (cur_accum & 0xff));
             cur_accum >>= 8;
             cur_bits -= 8;
         }
@@ -282,12 +362,12 @@ class LZWEncoder {
         if (code == EOFCode) {
             // At EOF, write the rest of the buffer.
             while (cur_bits > 0) {
-                char_out((byte) (cur_accum & 0xff), outs);
+                char_out((byte) (cur_accum & 0xff));
                 cur_accum >>= 8;
                 cur_bits -= 8;
             }
 
-            flush_char(outs);
+            flush_char();
         }
     }
 }
\ No newline at end of file
@@ -100,6 +100,11 @@ public class NeuQuant {
     protected int[] radPower = new int[initRad];
     /* radpower for precomputation */
 
+    protected ColorIndexTable exactIndex;
+    /* colour numbers of a picture with at most netsize colours, else null */
+    protected byte[] exactMap;
+    /* BGR colours of such a picture, in colour number order */
+
     /* Initialise network in range (0,0,0) to (255,255,255) and set parameters
        ----------------------------------------------------------------------- */
     public NeuQuant(byte[] thePic, int len, int sample) {
@@ -274,6 +279,38 @@ public class NeuQuant {
         //fprintf(stderr,"finished 1D learning: final alpha=%f !\n",((float)alpha)/initalpha);
     }
 
+    /* Collect the colours of a picture with at most netsize of them, so they
+       make the palette as is and the network is not needed
+       ---------------------------------------------------------------------- */
+    public boolean buildExactMap() {
+        ColorIndexTable index = new ColorIndexTable(netSize);
+        byte[] map = new byte[3 * netSize];
+        byte[] p = thePicture;
+        int last = -1;
+        for (int pix = 0; pix + 2 < lengthCount; pix += 3) {
+            int b = p[pix] & 0xff;
+            int g = p[pix + 1] & 0xff;
+            int r = p[pix + 2] & 0xff;
+            int colour = ColorIndexTable.pack(b, g, r);
+            if (colour == last || index.get(colour) != ColorIndexTable.MISSING) {
+                last = colour;
+                continue;
+            }
+            int n = index.size();
+            if (n == netSize) {
+                return false; /* too many colours, learn them */
+            }
+            index.put(colour, n);
+            map[3 * n] = (byte) b;
+            map[3 * n + 1] = (byte) g;
+            map[3 * n + 2] = (byte) r;
+            last = colour;
+        }
+        exactIndex = index;
+        exactMap = map;
+        return true;
+    }
+
     /* Search for BGR values 0..255 (after net is unbiased) and return colour index
        ---------------------------------------------------------------------------- */
     @SuppressWarnings("DuplicatedCode")
@@ -283,6 +320,25 @@ public class NeuQuant {
         int[] p;
         int best;
 
+        if (exactIndex != null) {
+            best = exactIndex.get(ColorIndexTable.pack(b, g, r));
+            if (best != ColorIndexTable.MISSING) {
+                return best;
+            }
+            /* colour absent from the picture, find the nearest one */
+            bestd = Integer.MAX_VALUE;
+            for (i = 0, j = 0; i < exactIndex.size(); i++, j += 3) {
+                dist = Math.abs((exactMap[j] & 0xff) - b)
+                        + Math.abs((exactMap[j + 1] & 0xff) - g)
+                        + Math.abs((exactMap[j + 2] & 0xff) - r);
+                if (dist < bestd) {
+                    bestd = dist;
+                    best = i;
+                }
+            }
+            return best;
+        }
+
         bestd = 1000; /* biggest possible dist is 256*3 */
         best = -1;
         i = netInDex[g]; /* index on g */
@@ -350,6 +406,9 @@ public class NeuQuant {
     }
 
     public byte[] process() {
+        if (buildExactMap()) {
+            return exactMap.clone();
+        }
         learn();
         unBiasNet();
         inxBuild();
@@ -19,15 +19,23 @@ public class StructuralSimilarityFitStrategy implements BestCharacterFitStrategy
         float C2 = k2 * l;
         C2 *= C2;
 
-        final int imgLength = character.getData().length;
+        final float[] characterData = character.getData();
+        final float[] tileData = tile.getData();
+        final int width = character.getWidth();
+        final int height = character.getHeight();
+        final int imgLength = width * height;
 
         float score = 0f;
-        for (int i = 0; i < imgLength; i++) {
-            float pixelImg1 = character.getData()[i];
-            float pixelImg2 = tile.getData()[i];
-
-            score += (2 * pixelImg1 * pixelImg2 + C1) * (2 + C2)
-                    / (pixelImg1 * pixelImg1 + pixelImg2 * pixelImg2 + C1) / C2;
+        for (int y = 0; y < height; y++) {
+            int characterIndex = character.indexOf(0, y);
+            int tileIndex = tile.indexOf(0, y);
+            for (int x = 0; x < width; x++) {
+                float pixelImg1 = characterData[characterIndex + x];
+                float pixelImg2 = tileData[tileIndex + x];
+
+                score += (2 * pixelImg1 * pixelImg2 + C1) * (2 + C2)
+                        / (pixelImg1 * pixelImg1 + pixelImg2 * pixelImg2 + C1) / C2;
+            }
         }
 
         // average and convert score to error
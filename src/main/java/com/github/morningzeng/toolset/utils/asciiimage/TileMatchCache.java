@@ -0,0 +1,255 @@
+package com.github.morningzeng.toolset.utils.asciiimage;
+
+import lombok.Getter;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded LRU cache of best fitting glyphs, keyed by a signature of the
+ * tile pixels.
+ * <p>
+ * Pixels are quantized before being hashed, so identical and near-identical
+ * tiles (solid backgrounds, repeated UI elements) share a signature and are
+ * matched only once. Signatures are 64-bit hashes: distinct tiles sharing one
+ * are possible but unlikely enough to be ignored.
+ * <p>
+ * Cached glyphs are only meaningful for the character cache and matching
+ * settings they were found with; {@link #retainFor(Object...)} drops them
+ * when those change. The cache is thread safe: signatures are spread over
+ * {@link #STRIPES} independently locked LRU segments, so parallel tile rows
+ * rarely wait for each other.
+ */
+public class TileMatchCache {
+
+    /**
+     * Default number of low bits dropped from each gray level, leaving 32
+     * levels.
+     */
+    public static final int DEFAULT_QUANTIZATION_SHIFT = 3;
+
+    /**
+     * Value returned by {@link #get(long)} when no glyph is cached.
+     */
+    public static final int MISSING = -1;
+
+    /**
+     * Number of independently locked segments, a power of two.
+     */
+    private static final int STRIPES = 16;
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /**
+     * Maximum number of cached signatures, rounded up to a multiple of
+     * {@link #STRIPES} as each segment holds an equal share.
+     * <p>
+     * -- GETTER --
+     * <p>
+     * Gets the maximum number of cached signatures.
+     */
+    @Getter
+    private final int capacity;
+
+    /**
+     * Number of low bits dropped from each gray level before hashing.
+     * <p>
+     * -- GETTER --
+     * <p>
+     * Gets the quantization shift.
+     */
+    @Getter
+    private final int quantizationShift;
+
+    /**
+     * Glyph index by tile signature, in access order, one map per segment.
+     */
+    private final LinkedHashMap<Long, Integer>[] segments;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Context the cached glyphs were found in, guarded by itself.
+     */
+    private final Object[][] context = {new Object[0]};
+
+    /**
+     * Instantiates a new tile match cache with the default quantization.
+     *
+     * @param capacity maximum number of cached signatures
+     */
+    public TileMatchCache(final int capacity) {
+        this(capacity, DEFAULT_QUANTIZATION_SHIFT);
+    }
+
+    /**
+     * Instantiates a new tile match cache.
+     *
+     * @param capacity          maximum number of cached signatures
+     * @param quantizationShift number of low bits dropped from each gray level,
+     *                          0 to only share results between identical tiles
+     */
+    @SuppressWarnings("unchecked")
+    public TileMatchCache(final int capacity, final int quantizationShift) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive!");
+        }
+        if (quantizationShift < 0 || quantizationShift > 7) {
+            throw new IllegalArgumentException("Quantization shift must be between 0 and 7!");
+        }
+
+        final int segmentCapacity = (capacity + STRIPES - 1) / STRIPES;
+        this.capacity = segmentCapacity * STRIPES;
+        this.quantizationShift = quantizationShift;
+        this.segments = new LinkedHashMap[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            this.segments[i] = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(final Map.Entry<Long, Integer> eldest) {
+                    return size() > segmentCapacity;
+                }
+            };
+        }
+    }
+
+    private LinkedHashMap<Long, Integer> segment(final long signature) {
+        return segments[(int) (signature ^ (signature >>> 32)) & (STRIPES - 1)];
+    }
+
+    /**
+     * Calculates the signature of a tile.
+     *
+     * @param tile the tile
+     * @return the signature
+     */
+    public long signature(final GrayscaleMatrix tile) {
+        final float[] data = tile.getData();
+
+        long hash = FNV_OFFSET_BASIS;
+        hash = (hash ^ tile.getWidth()) * FNV_PRIME;
+        hash = (hash ^ tile.getHeight()) * FNV_PRIME;
+        for (int y = 0; y < tile.getHeight(); y++) {
+            int index = tile.indexOf(0, y);
+            for (int x = 0; x < tile.getWidth(); x++) {
+                hash = (hash ^ ((int) data[index + x] >> quantizationShift)) * FNV_PRIME;
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Gets the glyph cached for a signature, counting a hit or a miss.
+     *
+     * @param signature the tile signature
+     * @return the glyph index, or {@link #MISSING}
+     */
+    public int get(final long signature) {
+        final LinkedHashMap<Long, Integer> glyphs = segment(signature);
+        Integer glyph;
+        synchronized (glyphs) {
+            glyph = glyphs.get(signature);
+        }
+
+        if (glyph == null) {
+            misses.increment();
+            return MISSING;
+        }
+        hits.increment();
+        return glyph;
+    }
+
+    /**
+     * Caches the glyph found for a signature, evicting the least recently used
+     * signature when full.
+     *
+     * @param signature the tile signature
+     * @param glyph     the glyph index
+     */
+    public void put(final long signature, final int glyph) {
+        final LinkedHashMap<Long, Integer> glyphs = segment(signature);
+        synchronized (glyphs) {
+            glyphs.put(signature, glyph);
+        }
+    }
+
+    /**
+     * Drops every cached glyph unless they were found in the same context,
+     * compared element by element. Counters are kept.
+     *
+     * @param context the character cache and matching settings in use
+     */
+    public void retainFor(final Object... context) {
+        synchronized (this.context) {
+            if (!Arrays.equals(this.context[0], context)) {
+                clearSegments();
+                this.context[0] = context.clone();
+            }
+        }
+    }
+
+    /**
+     * Drops every cached glyph and resets the counters.
+     */
+    public void clear() {
+        clearSegments();
+        hits.reset();
+        misses.reset();
+    }
+
+    private void clearSegments() {
+        for (final LinkedHashMap<Long, Integer> glyphs : segments) {
+            synchronized (glyphs) {
+                glyphs.clear();
+            }
+        }
+    }
+
+    /**
+     * Gets the number of cached signatures.
+     *
+     * @return the size
+     */
+    public int size() {
+        int size = 0;
+        for (final LinkedHashMap<Long, Integer> glyphs : segments) {
+            synchronized (glyphs) {
+                size += glyphs.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Gets the number of lookups that found a cached glyph.
+     *
+     * @return the hit count
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Gets the number of lookups that found no cached glyph.
+     *
+     * @return the miss count
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Gets the share of lookups that found a cached glyph.
+     *
+     * @return the hit rate between 0 and 1, 0 before any lookup
+     */
+    public double getHitRate() {
+        long hitCount = getHits();
+        long total = hitCount + getMisses();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+}
@@ -2,18 +2,16 @@ package com.github.morningzeng.toolset.utils.asciiimage;
 
 import lombok.Getter;
 
-import java.util.ArrayList;
-import java.util.List;
-
 /**
  * A class for for creating mutliple tiles from an input grayscale matrix.
+ * Tiles are views into the source matrix, so tiling does not copy any pixels.
  */
 public class TiledGrayscaleMatrix {
 
     /**
-     * The tiles.
+     * The source matrix the tiles are views of.
      */
-    private final List<GrayscaleMatrix> tiles;
+    private final GrayscaleMatrix matrix;
 
     /**
      * Width of a tile.
@@ -76,34 +74,30 @@ public class TiledGrayscaleMatrix {
             throw new IllegalArgumentException("Illegal tile size!");
         }
 
+        this.matrix = matrix;
         this.tileWidth = tileWidth;
         this.tileHeight = tileHeight;
 
         // we won't allow partial tiles
         tilesX = matrix.getWidth() / tileWidth;
         tilesY = matrix.getHeight() / tileHeight;
-        int roundedWidth = tilesX * tileWidth;
-        int roundedHeight = tilesY * tileHeight;
-
-        tiles = new ArrayList<>(roundedWidth * roundedHeight);
-
-        // create each tile as a subregion from source matrix
-        for (int i = 0; i < tilesY; i++) {
-            for (int j = 0; j < tilesX; j++) {
-                tiles.add(GrayscaleMatrix.createFromRegion(matrix, tileWidth,
-                        tileHeight, this.tileWidth * j, this.tileHeight * i));
-            }
-        }
     }
 
     /**
      * Gets the tile at a specific index.
      *
      * @param index tile index
-     * @return the tile
+     * @return a view of the tile region in the source matrix
      */
     public GrayscaleMatrix getTile(final int index) {
-        return tiles.get(index);
+        if (index < 0 || index >= getTileCount()) {
+            throw new IndexOutOfBoundsException("Tile index out of range: " + index);
+        }
+
+        int tileX = ArrayUtils.convert1DtoX(index, tilesX);
+        int tileY = ArrayUtils.convert1DtoY(index, tilesX);
+        return GrayscaleMatrix.createView(matrix, tileWidth, tileHeight,
+                tileWidth * tileX, tileHeight * tileY);
     }
 
     /**
@@ -112,7 +106,7 @@ public class TiledGrayscaleMatrix {
      * @return the number of tiles
      */
     public int getTileCount() {
-        return tiles.size();
+        return tilesX * tilesY;
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,117 @@
+package com.github.morningzeng.toolset.utils.asciiimage;
+
+import org.junit.Test;
+
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the bounded search of {@link AsciiConverter} picks the same best
+ * fit as trying every character, for each fit strategy.
+ *
+ * @author agent
+ * @since 2026-10-17
+ */
+public class AsciiConverterTest {
+
+    private static final AsciiImgCache CHARACTER_CACHE = AsciiImgCache.create(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+    private static final BufferedImage IMAGE = syntheticImage(503, 311);
+
+    @Test
+    public void colorSquareErrorFindsBestFit() {
+        assertBestFit(new ColorSquareErrorFitStrategy());
+    }
+
+    @Test
+    public void fastColorSquareErrorFindsBestFit() {
+        assertBestFit(new FastColorSquareErrorFitStrategy());
+    }
+
+    @Test
+    public void structuralSimilarityFindsBestFit() {
+        assertBestFit(new StructuralSimilarityFitStrategy());
+    }
+
+    @Test
+    public void fastStructuralSimilarityFindsBestFit() {
+        assertBestFit(new FastStructuralSimilarityFitStrategy());
+    }
+
+    private static void assertBestFit(final BestCharacterFitStrategy strategy) {
+        final int[][] glyphs = new GlyphRecorder(strategy).convertImage(IMAGE);
+
+        final Dimension tileSize = CHARACTER_CACHE.getCharacterImageSize();
+        final int tilesY = glyphs.length;
+        final int tilesX = glyphs[0].length;
+        final int width = tilesX * tileSize.width;
+        final int height = tilesY * tileSize.height;
+        final GrayscaleMatrix matrix = new GrayscaleMatrix(IMAGE.getRGB(0, 0, width, height, null, 0, width), width, height);
+        final TiledGrayscaleMatrix tiledMatrix = new TiledGrayscaleMatrix(matrix, tileSize.width, tileSize.height);
+
+        for (int tileY = 0; tileY < tilesY; tileY++) {
+            for (int tileX = 0; tileX < tilesX; tileX++) {
+                final GrayscaleMatrix tile = tiledMatrix.getTile(ArrayUtils.convert2DTo1D(tileX, tileY, tilesX));
+                float minError = Float.MAX_VALUE;
+                for (int glyph = 0; glyph < CHARACTER_CACHE.getGlyphCount(); glyph++) {
+                    minError = Math.min(minError, strategy.calculateError(CHARACTER_CACHE.getGlyph(glyph), tile));
+                }
+                final float error = strategy.calculateError(CHARACTER_CACHE.getGlyph(glyphs[tileY][tileX]), tile);
+                assertTrue("tile (%d, %d): error %s, best %s".formatted(tileX, tileY, error, minError), error <= minError);
+            }
+        }
+    }
+
+    /**
+     * An image mixing gradients, flat areas and noise, so tiles cover the
+     * whole range of mean intensities.
+     */
+    private static BufferedImage syntheticImage(final int width, final int height) {
+        final Random random = new Random(42);
+        final BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int value;
+                if (x < width / 3) {
+                    value = x * 255 / (width / 3);
+                } else if (x < 2 * width / 3) {
+                    value = ((x / 7 + y / 11) & 1) == 0 ? 30 : 220;
+                } else {
+                    value = random.nextInt(256);
+                }
+                image.setRGB(x, y, value << 16 | value << 8 | value);
+            }
+        }
+        return image;
+    }
+
+    /**
+     * Records the index of the character chosen for each tile.
+     */
+    private static final class GlyphRecorder extends AsciiConverter<int[][]> {
+
+        private GlyphRecorder(final BestCharacterFitStrategy characterFitStrategy) {
+            super(CHARACTER_CACHE, characterFitStrategy);
+        }
+
+        @Override
+        protected void addCharacterToOutput(final int glyphIndex, final int[] sourceImagePixels,
+                                            final int tileX, final int tileY, final int imageWidth) {
+            output[tileY][tileX] = glyphIndex;
+        }
+
+        @Override
+        protected void finalizeOutput(final int[] sourceImagePixels, final int imageWidth, final int imageHeight) {
+        }
+
+        @Override
+        protected int[][] initializeOutput(final int imageWidth, final int imageHeight) {
+            final Dimension tileSize = characterCache.getCharacterImageSize();
+            return new int[imageHeight / tileSize.height][imageWidth / tileSize.width];
+        }
+    }
+
+}
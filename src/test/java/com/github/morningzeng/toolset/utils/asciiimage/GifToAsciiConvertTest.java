@@ -0,0 +1,92 @@
+package com.github.morningzeng.toolset.utils.asciiimage;
+
+import org.junit.Test;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that both {@link GifToAsciiConvert} overloads report a GIF that
+ * cannot be read to its end.
+ *
+ * @author agent
+ * @since 2026-10-17
+ */
+public class GifToAsciiConvertTest {
+
+    private static final AsciiImgCache CHARACTER_CACHE = AsciiImgCache.create(new Font(Font.MONOSPACED, Font.PLAIN, 8));
+
+    @Test
+    public void convertsCompleteGif() throws IOException {
+        final Path source = writeGif(animation());
+        assertEquals(1, convert(source, 0));
+        assertEquals(1, convert(source, 2));
+    }
+
+    @Test
+    public void rejectsTruncatedGif() throws IOException {
+        final byte[] gif = animation();
+        final Path source = writeGif(Arrays.copyOf(gif, gif.length * 2 / 3));
+        assertEquals(-1, convert(source, 0));
+        assertEquals(-1, convert(source, 2));
+    }
+
+    /**
+     * Converts a GIF into a temporary file.
+     *
+     * @param workers the number of frames converted concurrently, 0 for the
+     *                sequential overload
+     * @return the result of the conversion
+     */
+    private static int convert(final Path source, final int workers) throws IOException {
+        final Path target = Files.createTempFile("ascii", ".gif");
+        try {
+            final GifToAsciiConvert convert = new GifToAsciiConvert(CHARACTER_CACHE, new ColorSquareErrorFitStrategy());
+            return workers == 0
+                    ? convert.convertGitToAscii(source.toString(), target.toString(), 100, 0)
+                    : convert.convertGitToAscii(source.toString(), target.toString(), 100, 0, workers);
+        } finally {
+            Files.deleteIfExists(target);
+        }
+    }
+
+    private static Path writeGif(final byte[] gif) throws IOException {
+        final Path path = Files.createTempFile("source", ".gif");
+        path.toFile().deleteOnExit();
+        return Files.write(path, gif);
+    }
+
+    /**
+     * Encodes a few frames of a square moving over a gradient.
+     */
+    private static byte[] animation() {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final AnimatedGifEncoder encoder = new AnimatedGifEncoder();
+        encoder.start(out);
+        encoder.setDelay(100);
+        for (int frame = 0; frame < 6; frame++) {
+            final BufferedImage image = new BufferedImage(160, 96, BufferedImage.TYPE_INT_RGB);
+            final Graphics2D g = image.createGraphics();
+            for (int x = 0; x < image.getWidth(); x++) {
+                g.setColor(new Color(x * 255 / image.getWidth(), 96, 160));
+                g.drawLine(x, 0, x, image.getHeight());
+            }
+            g.setColor(Color.WHITE);
+            g.fillRect(frame * 20, 24, 40, 40);
+            g.dispose();
+            encoder.addFrame(image);
+        }
+        encoder.finish();
+        return out.toByteArray();
+    }
+
+}